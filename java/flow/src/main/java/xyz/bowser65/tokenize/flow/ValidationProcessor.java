@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize.flow;
+
+import lombok.Builder;
+import xyz.bowser65.tokenize.AsyncAccountFetcher;
+import xyz.bowser65.tokenize.Tokenize;
+import xyz.bowser65.tokenize.ValidationResult;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+
+/**
+ * {@link Flow.Processor} validating a stream of tokens against an {@link AsyncAccountFetcher}. At most
+ * {@code maxConcurrency} tokens are being validated or waiting for downstream demand at any time, and more
+ * tokens are only requested from upstream once results have been delivered, so a slow subscriber slows
+ * down the fetches instead of piling up results.
+ * <p>
+ * Invalid tokens are reported as {@link ValidationResult}s. A failing fetch, or an upstream error, ends the
+ * stream with that error. Tokens must not change once handed to the processor.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ValidationProcessor implements Flow.Processor<CharSequence, ValidationResult> {
+    private final Tokenize tokenize;
+    private final AsyncAccountFetcher fetcher;
+    private final int maxConcurrency;
+    private final boolean ordered;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Slot> slots = new ArrayDeque<>();
+    private final ArrayDeque<ValidationResult> ready = new ArrayDeque<>();
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super ValidationResult> downstream;
+    private long demand;
+    private boolean subscribed;
+    private boolean started;
+    private boolean upstreamDone;
+    private Throwable failure;
+    private boolean cancelled;
+    private boolean draining;
+    private boolean missed;
+
+    /**
+     * @param tokenize       The Tokenize instance tokens are validated with.
+     * @param fetcher        The account fetcher used to retrieve the accounts.
+     * @param maxConcurrency Maximum amount of tokens being validated or waiting to be delivered. Defaults to 16.
+     * @param ordered        Whether results are delivered in the order tokens were received. Otherwise they are
+     *                       delivered as soon as they are ready.
+     */
+    @Builder
+    private ValidationProcessor(@Nonnull final Tokenize tokenize, @Nonnull final AsyncAccountFetcher fetcher,
+                                final int maxConcurrency, final boolean ordered) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("Concurrency cannot be negative.");
+        }
+        this.tokenize = tokenize;
+        this.fetcher = fetcher;
+        this.maxConcurrency = maxConcurrency == 0 ? 16 : maxConcurrency;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void subscribe(@Nonnull final Flow.Subscriber<? super ValidationResult> subscriber) {
+        final boolean first;
+        synchronized (lock) {
+            first = !subscribed;
+            subscribed = true;
+        }
+        if (!first) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("This processor only supports a single subscriber."));
+            return;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                synchronized (lock) {
+                    if (n <= 0) {
+                        if (failure == null) failure = new IllegalArgumentException("Requested amount must be positive.");
+                    } else {
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    }
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                ValidationProcessor.this.cancel();
+            }
+        });
+        // Only published once onSubscribe returned, so no other signal can overtake it.
+        synchronized (lock) {
+            downstream = subscriber;
+        }
+        start();
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(@Nonnull final Flow.Subscription subscription) {
+        final boolean first;
+        synchronized (lock) {
+            first = upstream == null;
+            if (first) {
+                upstream = subscription;
+            }
+        }
+        if (!first) {
+            subscription.cancel();
+            return;
+        }
+        start();
+    }
+
+    @Override
+    public void onNext(@Nonnull final CharSequence token) {
+        final Slot slot = new Slot();
+        synchronized (lock) {
+            if (cancelled || upstreamDone) return;
+            slots.add(slot);
+        }
+
+        final CompletionStage<ValidationResult> stage;
+        try {
+            stage = tokenize.validateResult(token, fetcher);
+        } catch (Throwable t) {
+            complete(slot, null, t);
+            return;
+        }
+        slot.stage = stage;
+        stage.whenComplete((result, error) -> complete(slot, result, error));
+    }
+
+    @Override
+    public void onError(@Nonnull final Throwable throwable) {
+        synchronized (lock) {
+            upstreamDone = true;
+            if (failure == null) failure = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    /**
+     * Requests the first tokens once both ends are subscribed.
+     */
+    private void start() {
+        final Flow.Subscription subscription;
+        synchronized (lock) {
+            if (started || upstream == null || downstream == null) return;
+            started = true;
+            subscription = upstream;
+        }
+        subscription.request(maxConcurrency);
+    }
+
+    private void complete(@Nonnull final Slot slot, @Nullable final ValidationResult result, @Nullable final Throwable error) {
+        synchronized (lock) {
+            if (cancelled) return;
+            if (error != null) {
+                if (failure == null) failure = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            } else if (ordered) {
+                slot.result = result;
+            } else {
+                slots.remove(slot);
+                ready.add(result);
+            }
+        }
+        drain();
+    }
+
+    private void cancel() {
+        final Flow.Subscription subscription;
+        final List<Slot> pending;
+        synchronized (lock) {
+            if (cancelled) return;
+            cancelled = true;
+            subscription = upstream;
+            pending = new ArrayList<>(slots);
+            slots.clear();
+            ready.clear();
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        for (final Slot slot : pending) {
+            if (slot.stage instanceof Future) ((Future<?>) slot.stage).cancel(false);
+        }
+    }
+
+    /**
+     * Delivers whatever can be delivered. Only one thread drains at a time, others leave a note for it to go
+     * through the queues again.
+     */
+    private void drain() {
+        synchronized (lock) {
+            if (draining) {
+                missed = true;
+                return;
+            }
+            draining = true;
+        }
+
+        for (;;) {
+            final Flow.Subscriber<? super ValidationResult> subscriber;
+            ValidationResult next = null;
+            Throwable error = null;
+            boolean done = false, more;
+            synchronized (lock) {
+                subscriber = downstream;
+                if (cancelled || subscriber == null) {
+                    draining = false;
+                    return;
+                }
+                if (failure != null) {
+                    error = failure;
+                } else if (demand > 0 && (next = poll()) != null) {
+                    demand--;
+                } else if (upstreamDone && slots.isEmpty() && ready.isEmpty()) {
+                    done = true;
+                } else if (missed) {
+                    missed = false;
+                    continue;
+                } else {
+                    draining = false;
+                    return;
+                }
+                more = !upstreamDone;
+            }
+
+            if (error != null || done) {
+                cancel();
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+            subscriber.onNext(next);
+            if (more) {
+                upstream.request(1);
+            }
+        }
+    }
+
+    /**
+     * @return The next result to deliver, or {@code null} if none is ready yet. Must hold the lock.
+     */
+    @Nullable
+    private ValidationResult poll() {
+        if (!ordered) return ready.poll();
+        final Slot head = slots.peek();
+        if (head == null || head.result == null) return null;
+        slots.poll();
+        return head.result;
+    }
+
+    private static final class Slot {
+        volatile CompletionStage<ValidationResult> stage;
+        ValidationResult result;
+    }
+}
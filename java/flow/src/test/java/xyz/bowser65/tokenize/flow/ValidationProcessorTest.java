@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize.flow;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import xyz.bowser65.tokenize.IAccount;
+import xyz.bowser65.tokenize.Tokenize;
+import xyz.bowser65.tokenize.ValidationResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ValidationProcessorTest {
+    private final Tokenize tokenize = new Tokenize("very secure private key".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    public void testOrderedBackpressure() {
+        final Map<String, CompletableFuture<IAccount>> fetches = new ConcurrentHashMap<>();
+        final ValidationProcessor processor = ValidationProcessor.builder()
+                .tokenize(tokenize)
+                .fetcher(id -> fetches.computeIfAbsent(id, k -> new CompletableFuture<>()))
+                .maxConcurrency(2)
+                .ordered(true)
+                .build();
+        final Upstream upstream = new Upstream();
+        final Downstream downstream = new Downstream();
+        processor.onSubscribe(upstream);
+        processor.subscribe(downstream);
+        Assertions.assertEquals(2, upstream.requested.get());
+
+        final String first = tokenize.generateToken(new Account("1", 0)).toString();
+        processor.onNext(first);
+        processor.onNext("not a token");
+        Assertions.assertEquals(1, fetches.size());
+        Assertions.assertTrue(downstream.results.isEmpty());
+
+        downstream.subscription.request(1);
+        Assertions.assertTrue(downstream.results.isEmpty());
+        fetches.get("1").complete(new Account("1", 0));
+        Assertions.assertEquals(1, downstream.results.size());
+        Assertions.assertEquals(first, downstream.results.get(0).getToken().toString());
+        Assertions.assertEquals(3, upstream.requested.get());
+
+        processor.onComplete();
+        Assertions.assertFalse(downstream.completed);
+        downstream.subscription.request(1);
+        Assertions.assertEquals(ValidationResult.Status.MALFORMED, downstream.results.get(1).getStatus());
+        Assertions.assertTrue(downstream.completed);
+    }
+
+    @Test
+    public void testUnordered() {
+        final Map<String, CompletableFuture<IAccount>> fetches = new ConcurrentHashMap<>();
+        final ValidationProcessor processor = ValidationProcessor.builder()
+                .tokenize(tokenize)
+                .fetcher(id -> fetches.computeIfAbsent(id, k -> new CompletableFuture<>()))
+                .build();
+        final Upstream upstream = new Upstream();
+        final Downstream downstream = new Downstream();
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        downstream.subscription.request(Long.MAX_VALUE);
+
+        processor.onNext(tokenize.generateToken(new Account("1", 0)).toString());
+        processor.onNext(tokenize.generateToken(new Account("2", 0)).toString());
+        fetches.get("2").complete(null);
+        Assertions.assertEquals(ValidationResult.Status.UNKNOWN_ACCOUNT, downstream.results.get(0).getStatus());
+
+        fetches.get("1").completeExceptionally(new IllegalStateException("store down"));
+        Assertions.assertTrue(downstream.error instanceof IllegalStateException);
+        Assertions.assertTrue(upstream.cancelled.get());
+    }
+
+    @Test
+    public void testCancel() {
+        final CompletableFuture<IAccount> pending = new CompletableFuture<>();
+        final ValidationProcessor processor = ValidationProcessor.builder()
+                .tokenize(tokenize)
+                .fetcher(id -> pending)
+                .build();
+        final Upstream upstream = new Upstream();
+        final Downstream downstream = new Downstream();
+        processor.onSubscribe(upstream);
+        processor.subscribe(downstream);
+
+        processor.onNext(tokenize.generateToken(new Account("1", 0)).toString());
+        downstream.subscription.cancel();
+        Assertions.assertTrue(upstream.cancelled.get());
+        Assertions.assertTrue(pending.isCancelled());
+    }
+
+    private static class Upstream implements Flow.Subscription {
+        final AtomicLong requested = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public void request(final long n) {
+            requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+    private static class Downstream implements Flow.Subscriber<ValidationResult> {
+        final List<ValidationResult> results = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(final ValidationResult item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static class Account implements IAccount {
+        private final String id;
+        private final long validSince;
+
+        Account(final String id, final long validSince) {
+            this.id = id;
+            this.validSince = validSince;
+        }
+
+        @Override
+        public String getTokenId() {
+            return id;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return validSince;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codes are wrong on purpose, so every call computes a code without being cut short by the replay cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OtpBenchmark {
+    private static final String SECRET = "IJZHE7RAJVSW65ZB";
+
+    private final OtpVerifier verifier = OtpVerifier.of(SECRET);
+
+    @Benchmark
+    @Threads(1)
+    public boolean validateTotp() {
+        return OTPUtils.validateTotp("000000", SECRET);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean validateTotpContended() {
+        return OTPUtils.validateTotp("000000", SECRET);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean verifierTotp() {
+        return verifier.validateTotp("000000");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean verifierTotpContended() {
+        return verifier.validateTotp("000000");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long validateTotpWindow() {
+        return OTPUtils.validateTotp("000000", SECRET, 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long validateTotpWindowContended() {
+        return OTPUtils.validateTotp("000000", SECRET, 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long verifierTotpWindow() {
+        return verifier.validateTotp("000000", 1);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenBenchmark {
+    @Param({"1", "2"})
+    public int version;
+
+    private final IAccount account = new IAccount() {
+        @Override
+        public String getTokenId() {
+            return "250464213645590528";
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return 0;
+        }
+    };
+    private final AccountFetcher fetcher = id -> account;
+    private final AsyncAccountFetcher asyncFetcher = id -> CompletableFuture.completedFuture(account);
+
+    private Tokenize tokenize;
+    private String token;
+    private String forged;
+
+    @Setup
+    public void setup() {
+        tokenize = Tokenize.builder()
+                .secret("very secure private key".getBytes(StandardCharsets.UTF_8))
+                .version(version)
+                .build();
+        token = tokenize.generateToken(account, "prefix").toString();
+        forged = token.substring(0, token.length() - 4) + "AAAA";
+    }
+
+    @Benchmark
+    public String generate() {
+        return tokenize.generateToken(account, "prefix").toString();
+    }
+
+    @Benchmark
+    public Token validate() throws SignatureException {
+        return tokenize.validateToken(token, fetcher);
+    }
+
+    @Benchmark
+    public Token validateAsync() throws SignatureException {
+        return tokenize.validateToken(token, asyncFetcher).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public boolean parse() {
+        return tokenize.parseLeniently(token).isVerified();
+    }
+
+    @Benchmark
+    public boolean parseBadSignature() {
+        return tokenize.parseLeniently(forged).isVerified();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of the ids of existing accounts, letting {@link Tokenize} skip fetching accounts it knows don't
+ * exist, such as deleted accounts whose tokens are still around. It never answers that an existing account
+ * doesn't exist, as long as every account is {@link #put(String) put} in it when created.
+ * <p>
+ * Filters are thread-safe and lock-free. They can't forget ids, build a new one from time to time to drop deleted
+ * accounts and swap it with {@link Tokenize#setAccountFilter(AccountFilter)}.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class AccountFilter {
+    private static final int MAGIC = 0x544b4246; // TKBF
+    private static final int FORMAT = 1;
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedAccounts  The amount of accounts the filter is sized for.
+     * @param falsePositiveRate The odds of a missing account being reported as existing, once the filter holds
+     *                          the expected amount of accounts. Defaults to 1%.
+     */
+    @Builder
+    private AccountFilter(final long expectedAccounts, final double falsePositiveRate) {
+        if (expectedAccounts <= 0) throw new IllegalArgumentException("Expected accounts must be positive.");
+        if (falsePositiveRate < 0 || falsePositiveRate >= 1) throw new IllegalArgumentException("False positive rate must be between 0 and 1.");
+
+        final double rate = falsePositiveRate == 0 ? 0.01 : falsePositiveRate;
+        final double bits = -expectedAccounts * Math.log(rate) / (Math.log(2) * Math.log(2));
+        final long words = (long) Math.ceil(bits / 64);
+        if (words > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("The filter would be too large.");
+        this.words = new AtomicLongArray((int) Math.max(1, words));
+        this.bitSize = this.words.length() * 64L;
+        this.hashCount = (int) Math.max(1, Math.round(bitSize / (double) expectedAccounts * Math.log(2)));
+    }
+
+    private AccountFilter(@Nonnull final long[] words, final int hashCount) {
+        this.words = new AtomicLongArray(words);
+        this.bitSize = words.length * 64L;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Adds an account id.
+     */
+    public void put(@Nonnull final String id) {
+        final long hash = RevocationIndex.hash(id), step = step(hash);
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = Long.remainderUnsigned(hash + i * step, bitSize);
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    /**
+     * Adds the id of an account.
+     */
+    public void put(@Nonnull final IAccount account) {
+        put(account.getTokenId());
+    }
+
+    /**
+     * @param id The account id.
+     * @return {@code false} if the account definitely doesn't exist, {@code true} if it may exist.
+     */
+    public boolean mightContain(@Nonnull final String id) {
+        final long hash = RevocationIndex.hash(id), step = step(hash);
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = Long.remainderUnsigned(hash + i * step, bitSize);
+            if ((words.get((int) (bit >>> 6)) & 1L << bit) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The amount of bits in the filter.
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * @return The amount of bits set per id.
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Writes the filter, for {@link #readFrom(InputStream)}. Ids added while writing may or may not be included.
+     *
+     * @param out The stream to write to. It is not closed.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(@Nonnull final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT);
+        data.writeInt(hashCount);
+        data.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            data.writeLong(words.get(i));
+        }
+        data.flush();
+    }
+
+    /**
+     * @param in The stream to read from. It is not closed.
+     * @return The filter written by {@link #writeTo(OutputStream)}.
+     * @throws IOException If reading fails, or the stream doesn't hold a filter.
+     */
+    @Nonnull
+    public static AccountFilter readFrom(@Nonnull final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != FORMAT) {
+            throw new IOException("The stream doesn't hold an account filter");
+        }
+        final int hashCount = data.readInt(), length = data.readInt();
+        if (hashCount <= 0 || length <= 0) {
+            throw new IOException("The account filter is corrupted");
+        }
+        final long[] words = new long[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = data.readLong();
+        }
+        return new AccountFilter(words, hashCount);
+    }
+
+    /**
+     * Second hash for double hashing, odd so it never degenerates into probing a single bit.
+     */
+    private static long step(long hash) {
+        hash = (hash ^ hash >>> 31) * 0xbf58476d1ce4e5b9L;
+        return hash ^ hash >>> 29 | 1;
+    }
+}
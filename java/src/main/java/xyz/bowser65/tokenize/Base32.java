@@ -27,62 +27,273 @@
 
 package xyz.bowser65.tokenize;
 
+import javax.annotation.Nonnull;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 
-class Base32 {
-    static final char[] ALPHABET = {
+/**
+ * RFC 4648 Base32 codec, as used by OTP secrets.
+ * <p>
+ * Strict decoding only accepts the upper case alphabet, optionally padded with {@code =} to a multiple of 8
+ * characters, and rejects inputs with leftover bits. Lenient decoding also accepts lower case, ignores whitespace
+ * and dashes (as found in secrets typed by users) and tolerates any padding or leftover bits.
+ * <p>
+ * Encoding never pads, which is what authenticator apps expect.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class Base32 {
+    private static final char[] ALPHABET = {
             'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P',
             'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z', '2', '3', '4', '5', '6', '7'
     };
 
-    @SuppressWarnings("DuplicateExpressions")
-    static byte[] decode(final String base32) {
-        final int[] b = new int[8];
-        final byte[] bytes = new byte[base32.length()];
-        final int count = base32.length() >> 3 << 3;
-        int byteIndex = 0, i = 0;
-
-        for (; i < count; ) {
-            final int limit = i + 8;
-            for (; i < limit; i++) {
-                b[i % 8] = indexOf(base32.charAt(i));
-            }
+    private static final byte INVALID = -1;
+    private static final byte LOWER_CASE = -2;
+    private static final byte IGNORED = -3;
+    private static final byte PADDING = -4;
 
-            bytes[byteIndex++] = (byte) ((b[0] << 3 | b[1] >>> 2) & 255);
-            bytes[byteIndex++] = (byte) ((b[1] << 6 | b[2] << 1 | b[3] >>> 4) & 255);
-            bytes[byteIndex++] = (byte) ((b[3] << 4 | b[4] >>> 1) & 255);
-            bytes[byteIndex++] = (byte) ((b[4] << 7 | b[5] << 2 | b[6] >>> 3) & 255);
-            bytes[byteIndex++] = (byte) ((b[6] << 5 | b[7]) & 255);
+    /**
+     * Value of each ASCII character, or one of the negative markers above.
+     */
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = (byte) i;
+            if (ALPHABET[i] >= 'A' && ALPHABET[i] <= 'Z') {
+                DECODE[Character.toLowerCase(ALPHABET[i])] = LOWER_CASE;
+            }
         }
+        DECODE[' '] = DECODE['\t'] = DECODE['\n'] = DECODE['\r'] = DECODE['-'] = IGNORED;
+        DECODE['='] = PADDING;
+    }
+
+    private Base32() {
+    }
+
+    /**
+     * @param chars Amount of Base32 characters.
+     * @return The maximum amount of bytes they decode to.
+     */
+    public static int maxDecodedLength(final int chars) {
+        return (int) (chars * 5L / 8);
+    }
 
-        final int remain = base32.length() - count;
-        if (remain == 2 || remain == 4 || remain == 5 || remain == 7) {
-            b[0] = indexOf(base32.charAt(i++));
-            b[1] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[0] << 3 | b[1] >>> 2) & 255);
+    /**
+     * @param bytes Amount of bytes.
+     * @return The amount of characters they encode to.
+     */
+    public static int encodedLength(final int bytes) {
+        return (int) ((bytes * 8L + 4) / 5);
+    }
+
+    /**
+     * Decodes strictly.
+     *
+     * @param base32 The Base32 data.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the data isn't valid Base32.
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final CharSequence base32) {
+        return decode(base32, false);
+    }
+
+    /**
+     * @param base32  The Base32 data.
+     * @param lenient Whether to decode leniently.
+     * @return The decoded bytes.
+     * @throws IllegalArgumentException If the data isn't valid Base32.
+     */
+    @Nonnull
+    public static byte[] decode(@Nonnull final CharSequence base32, final boolean lenient) {
+        // Counting first gives the exact output size, so there is nothing to trim afterwards.
+        int chars = 0;
+        for (int i = 0; i < base32.length(); i++) {
+            final char c = base32.charAt(i);
+            if (c < 128 && (DECODE[c] >= 0 || DECODE[c] == LOWER_CASE)) chars++;
         }
-        if (remain == 4 || remain == 5 || remain == 7) {
-            b[2] = indexOf(base32.charAt(i++));
-            b[3] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[1] << 6 | b[2] << 1 | b[3] >>> 4) & 255);
+        final byte[] bytes = new byte[maxDecodedLength(chars)];
+        decode(base32, 0, base32.length(), bytes, 0, lenient);
+        return bytes;
+    }
+
+    /**
+     * Decodes a range of characters into a caller provided array.
+     *
+     * @param src     The Base32 data.
+     * @param start   Index of the first character to decode.
+     * @param end     Index after the last character to decode.
+     * @param dst     Array receiving the bytes.
+     * @param dstOff  Index the first byte is written at.
+     * @param lenient Whether to decode leniently.
+     * @return The amount of bytes written.
+     * @throws IllegalArgumentException  If the data isn't valid Base32.
+     * @throws IndexOutOfBoundsException If the range is invalid, or {@code dst} is too small.
+     */
+    public static int decode(@Nonnull final CharSequence src, final int start, final int end, @Nonnull final byte[] dst, final int dstOff, final boolean lenient) {
+        if (start < 0 || end > src.length() || start > end) throw new IndexOutOfBoundsException("Invalid range");
+        return decode(src, start, end, dst, dstOff, dst.length, lenient) - dstOff;
+    }
+
+    /**
+     * @see #decode(CharSequence, int, int, byte[], int, boolean)
+     */
+    public static int decode(@Nonnull final char[] src, final int off, final int len, @Nonnull final byte[] dst, final int dstOff, final boolean lenient) {
+        return decode(CharBuffer.wrap(src, off, len), 0, len, dst, dstOff, lenient);
+    }
+
+    /**
+     * Decodes into a buffer, starting at its position. The position is moved past the written bytes.
+     *
+     * @param src     The Base32 data.
+     * @param dst     Buffer receiving the bytes.
+     * @param lenient Whether to decode leniently.
+     * @return The amount of bytes written.
+     * @throws IllegalArgumentException If the data isn't valid Base32.
+     * @throws BufferOverflowException  If the buffer doesn't have enough space left.
+     */
+    public static int decode(@Nonnull final CharSequence src, @Nonnull final ByteBuffer dst, final boolean lenient) {
+        if (dst.hasArray()) {
+            final int offset = dst.arrayOffset();
+            final int written;
+            try {
+                written = decode(src, 0, src.length(), dst.array(), offset + dst.position(), offset + dst.limit(), lenient)
+                        - offset - dst.position();
+            } catch (IndexOutOfBoundsException e) {
+                throw new BufferOverflowException();
+            }
+            dst.position(dst.position() + written);
+            return written;
         }
-        if (remain == 5 || remain == 7) {
-            b[4] = indexOf(base32.charAt(i++));
-            bytes[byteIndex++] = (byte) ((b[3] << 4 | b[4] >>> 1) & 255);
+        final byte[] bytes = decode(src, lenient);
+        dst.put(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * @return The index after the last written byte.
+     */
+    private static int decode(@Nonnull final CharSequence src, final int start, final int end, @Nonnull final byte[] dst,
+                              final int dstOff, final int dstEnd, final boolean lenient) {
+        int buffer = 0, bits = 0, chars = 0, padding = 0, out = dstOff;
+        for (int i = start; i < end; i++) {
+            final char c = src.charAt(i);
+            int value = c < 128 ? DECODE[c] : INVALID;
+            if (value == LOWER_CASE && lenient) {
+                value = DECODE[c - ('a' - 'A')];
+            } else if (value == IGNORED && lenient) {
+                continue;
+            } else if (value == PADDING) {
+                padding++;
+                continue;
+            }
+            if (value < 0 || padding != 0) {
+                throw new IllegalArgumentException("Invalid Base32 character '" + c + "' at index " + i);
+            }
+
+            buffer = buffer << 5 | value;
+            bits += 5;
+            chars++;
+            if (bits >= 8) {
+                bits -= 8;
+                if (out >= dstEnd) throw new IndexOutOfBoundsException("Destination is too small");
+                dst[out++] = (byte) (buffer >>> bits);
+                buffer &= (1 << bits) - 1;
+            }
         }
-        if (remain == 7) {
-            b[5] = indexOf(base32.charAt(i++));
-            b[6] = indexOf(base32.charAt(i));
-            bytes[byteIndex] = (byte) ((b[4] << 7 | b[5] << 2 | b[6] >>> 3) & 255);
+
+        if (!lenient) {
+            final int remain = chars % 8;
+            if (remain == 1 || remain == 3 || remain == 6 || buffer != 0) {
+                throw new IllegalArgumentException("Invalid Base32 length or trailing bits");
+            }
+            if (padding != 0 && (chars + padding) % 8 != 0) {
+                throw new IllegalArgumentException("Invalid Base32 padding");
+            }
         }
+        return out;
+    }
 
-        return Arrays.copyOf(bytes, byteIndex);
+    /**
+     * @param data The bytes to encode.
+     * @return The unpadded Base32 string.
+     */
+    @Nonnull
+    public static String encode(@Nonnull final byte[] data) {
+        return encode(data, 0, data.length);
     }
 
-    private static int indexOf(final char c) {
-        for (int i = 0; i < ALPHABET.length; i++) {
-            if (ALPHABET[i] == c) return i;
+    /**
+     * @param data The bytes to encode.
+     * @param off  Index of the first byte.
+     * @param len  Amount of bytes.
+     * @return The unpadded Base32 string.
+     */
+    @Nonnull
+    public static String encode(@Nonnull final byte[] data, final int off, final int len) {
+        final char[] chars = new char[encodedLength(len)];
+        encode(data, off, len, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Encodes the remaining bytes of a buffer. The position is moved to the limit.
+     *
+     * @param data The bytes to encode.
+     * @return The unpadded Base32 string.
+     */
+    @Nonnull
+    public static String encode(@Nonnull final ByteBuffer data) {
+        final char[] chars = new char[encodedLength(data.remaining())];
+        int buffer = 0, bits = 0, out = 0;
+        while (data.hasRemaining()) {
+            buffer = buffer << 8 | data.get() & 0xff;
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                chars[out++] = ALPHABET[buffer >>> bits & 31];
+            }
+        }
+        if (bits > 0) {
+            chars[out] = ALPHABET[buffer << (5 - bits) & 31];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes into a caller provided array.
+     *
+     * @param src    The bytes to encode.
+     * @param off    Index of the first byte.
+     * @param len    Amount of bytes.
+     * @param dst    Array receiving the characters, at least {@link #encodedLength(int)} long after {@code dstOff}.
+     * @param dstOff Index the first character is written at.
+     * @return The amount of characters written.
+     * @throws IndexOutOfBoundsException If a range is invalid.
+     */
+    public static int encode(@Nonnull final byte[] src, final int off, final int len, @Nonnull final char[] dst, final int dstOff) {
+        if (off < 0 || len < 0 || off + len > src.length) throw new IndexOutOfBoundsException("Invalid range");
+        if (dstOff < 0 || dstOff + encodedLength(len) > dst.length) throw new IndexOutOfBoundsException("Destination is too small");
+
+        int buffer = 0, bits = 0, out = dstOff;
+        for (int i = off; i < off + len; i++) {
+            buffer = buffer << 8 | src[i] & 0xff;
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                dst[out++] = ALPHABET[buffer >>> bits & 31];
+            }
+        }
+        if (bits > 0) {
+            dst[out++] = ALPHABET[buffer << (5 - bits) & 31];
         }
-        return -1;
+        return out - dstOff;
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Async account fetcher collecting ids over a short window and fetching them in bulk through a
+ * {@link BulkAccountFetcher}. A batch is sent once the window elapsed or once it is full, whichever comes first.
+ * The same id requested several times in a window is only fetched once.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BatchingAsyncAccountFetcher implements AsyncAccountFetcher {
+    private final BulkAccountFetcher fetcher;
+    private final long window;
+    private final int maxBatchSize;
+    private final int maxInFlightBatches;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Batch> queued = new ArrayDeque<>();
+    private Batch current;
+    private int inFlight;
+
+    /**
+     * @param fetcher            The bulk fetcher batches are sent to.
+     * @param window             How long ids are collected before a batch is sent. Defaults to 2 milliseconds.
+     * @param maxBatchSize       Maximum amount of ids in a batch. Defaults to 100.
+     * @param maxInFlightBatches Maximum amount of batches being fetched at the same time, further batches wait
+     *                           for one to complete. Defaults to 8.
+     * @param scheduler          Scheduler used for the batching window. Defaults to a shared daemon thread.
+     * @param executor           Executor batches are sent from once their window elapsed, so a slow bulk fetcher
+     *                           never holds up the scheduler. Defaults to the common fork-join pool.
+     */
+    @Builder
+    private BatchingAsyncAccountFetcher(@Nonnull final BulkAccountFetcher fetcher, @Nullable final Duration window, final int maxBatchSize,
+                                        final int maxInFlightBatches, @Nullable final ScheduledExecutorService scheduler,
+                                        @Nullable final Executor executor) {
+        if (maxBatchSize < 0 || maxInFlightBatches < 0) {
+            throw new IllegalArgumentException("Batch size and in-flight batches cannot be negative.");
+        }
+        this.fetcher = fetcher;
+        this.window = (window == null ? Duration.ofMillis(2) : window).toNanos();
+        this.maxBatchSize = maxBatchSize == 0 ? 100 : maxBatchSize;
+        this.maxInFlightBatches = maxInFlightBatches == 0 ? 8 : maxInFlightBatches;
+        this.scheduler = scheduler == null ? Schedulers.shared() : scheduler;
+        this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
+    }
+
+    @Override
+    public CompletionStage<IAccount> fetchAccount(final String id) {
+        final CompletableFuture<IAccount> future;
+        Batch opened = null, full = null;
+        synchronized (lock) {
+            if (current == null) {
+                current = opened = new Batch();
+            }
+            future = current.futures.computeIfAbsent(id, k -> new CompletableFuture<>());
+            if (current.futures.size() >= maxBatchSize) {
+                full = current;
+                current = null;
+            }
+        }
+
+        if (full != null) {
+            submit(full);
+        } else if (opened != null) {
+            final Batch batch = opened;
+            batch.timer = scheduler.schedule(() -> handOff(batch), window, TimeUnit.NANOSECONDS);
+        }
+        // Callers get their own dependent stage, so completing or cancelling it can't affect the others.
+        return future.thenApply(Function.identity());
+    }
+
+    /**
+     * Sends the batch being collected right away, without waiting for the window to elapse.
+     */
+    public void flush() {
+        final Batch batch;
+        synchronized (lock) {
+            batch = current;
+            current = null;
+        }
+        if (batch != null) {
+            submit(batch);
+        }
+    }
+
+    /**
+     * Runs on the scheduler, which must only hand the batch over.
+     */
+    private void handOff(@Nonnull final Batch batch) {
+        Schedulers.handOff(executor, () -> flush(batch));
+    }
+
+    private void flush(@Nonnull final Batch batch) {
+        synchronized (lock) {
+            if (current != batch) return;
+            current = null;
+        }
+        submit(batch);
+    }
+
+    private void submit(@Nonnull final Batch batch) {
+        final Future<?> timer = batch.timer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+
+        synchronized (lock) {
+            if (inFlight >= maxInFlightBatches) {
+                queued.add(batch);
+                return;
+            }
+            inFlight++;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(@Nonnull final Batch batch) {
+        final CompletionStage<Map<String, IAccount>> stage;
+        try {
+            stage = fetcher.fetchAccounts(Collections.unmodifiableSet(batch.futures.keySet()));
+        } catch (Throwable t) {
+            complete(batch, null, t);
+            return;
+        }
+        stage.whenComplete((accounts, error) -> complete(batch, accounts, error));
+    }
+
+    private void complete(@Nonnull final Batch batch, @Nullable final Map<String, IAccount> accounts, @Nullable final Throwable error) {
+        for (final Map.Entry<String, CompletableFuture<IAccount>> entry : batch.futures.entrySet()) {
+            if (error != null) {
+                entry.getValue().completeExceptionally(error);
+            } else {
+                entry.getValue().complete(accounts == null ? null : accounts.get(entry.getKey()));
+            }
+        }
+
+        final Batch next;
+        synchronized (lock) {
+            next = queued.poll();
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        if (next != null) {
+            dispatch(next);
+        }
+    }
+
+    private static final class Batch {
+        final Map<String, CompletableFuture<IAccount>> futures = new LinkedHashMap<>();
+        volatile Future<?> timer;
+    }
+}
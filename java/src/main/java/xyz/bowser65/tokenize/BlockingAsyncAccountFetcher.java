@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async account fetcher running a blocking {@link AccountFetcher} off the calling thread, for stores only
+ * offering blocking clients (JDBC and friends). Fetches run on virtual threads when the JDK has them (21+),
+ * and on a pool of {@code maxConcurrency} threads otherwise. Either way, no more than {@code maxConcurrency}
+ * fetches run at the same time, further fetches wait for one to complete.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class BlockingAsyncAccountFetcher implements AsyncAccountFetcher {
+    private final AccountFetcher fetcher;
+    private final Semaphore permits;
+    private final Executor executor;
+
+    /**
+     * @param fetcher        The blocking fetcher to run.
+     * @param maxConcurrency Maximum amount of fetches running at the same time. Defaults to 64.
+     * @param executor       Executor fetches are ran on. Defaults to virtual threads, or to a bounded pool of
+     *                       daemon threads if the JDK has no virtual threads.
+     */
+    @Builder
+    private BlockingAsyncAccountFetcher(@Nonnull final AccountFetcher fetcher, final int maxConcurrency, @Nullable final Executor executor) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("Concurrency cannot be negative.");
+        }
+        final int concurrency = maxConcurrency == 0 ? 64 : maxConcurrency;
+        this.fetcher = fetcher;
+        this.permits = new Semaphore(concurrency);
+        if (executor != null) {
+            this.executor = executor;
+        } else {
+            final Executor virtual = VirtualThreads.EXECUTOR;
+            this.executor = virtual != null ? virtual : boundedPool(concurrency);
+        }
+    }
+
+    @Override
+    public CompletionStage<IAccount> fetchAccount(final String id) {
+        final CompletableFuture<IAccount> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> fetch(id, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return Whether fetches run on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return VirtualThreads.EXECUTOR != null && executor == VirtualThreads.EXECUTOR;
+    }
+
+    private void fetch(@Nonnull final String id, @Nonnull final CompletableFuture<IAccount> future) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return;
+        }
+        try {
+            // Cancelled while waiting for a permit, no need to hit the store.
+            if (!future.isDone()) {
+                future.complete(fetcher.fetchAccount(id));
+            }
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Nonnull
+    private static Executor boundedPool(final int concurrency) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "Tokenize Fetcher " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static final class VirtualThreads {
+        /**
+         * Looked up reflectively, the library is compiled for Java 8. {@code null} if the JDK has no virtual threads.
+         */
+        @Nullable
+        static final Executor EXECUTOR = create();
+
+        @Nullable
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Missing before Java 19, and unusable without --enable-preview on Java 19 and 20.
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Account fetcher caching the accounts returned by another fetcher. Concurrent misses for the same id are
+ * coalesced into a single fetch.
+ * <p>
+ * Call {@link #invalidate(String)} whenever you bump the {@link IAccount#tokensValidSince()} of an account,
+ * otherwise revoked tokens are accepted until the cached account expires.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class CachingAccountFetcher implements AccountFetcher {
+    static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    static final Duration DEFAULT_TTL = Duration.ofSeconds(30);
+
+    private final AccountFetcher fetcher;
+    private final StripedCache<String, IAccount> cache;
+    private final long ttl;
+    private final long negativeTtl;
+    private final ConcurrentHashMap<String, CompletableFuture<IAccount>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param fetcher     The fetcher to cache accounts of.
+     * @param maximumSize Maximum amount of cached ids. Defaults to 10 000.
+     * @param ttl         How long an account stays cached. Defaults to 30 seconds.
+     * @param negativeTtl How long an unknown id stays cached. Unknown ids aren't cached if left unset.
+     */
+    @Builder
+    private CachingAccountFetcher(@Nonnull final AccountFetcher fetcher, final long maximumSize, @Nullable final Duration ttl, @Nullable final Duration negativeTtl) {
+        this.fetcher = fetcher;
+        this.cache = new StripedCache<>(maximumSize == 0 ? DEFAULT_MAXIMUM_SIZE : maximumSize);
+        this.ttl = (ttl == null ? DEFAULT_TTL : ttl).toNanos();
+        this.negativeTtl = negativeTtl == null ? 0 : negativeTtl.toNanos();
+    }
+
+    @Override
+    public IAccount fetchAccount(final String id) {
+        final StripedCache.Entry<IAccount> cached = cache.get(id, System.nanoTime());
+        if (cached != null) {
+            return cached.value;
+        }
+
+        final CompletableFuture<IAccount> fetch = new CompletableFuture<>();
+        final CompletableFuture<IAccount> pending = inFlight.putIfAbsent(id, fetch);
+        if (pending != null) {
+            return Futures.join(pending);
+        }
+
+        try {
+            final long epoch = cache.epoch(id);
+            final IAccount account = fetcher.fetchAccount(id);
+            store(cache, id, account, epoch, ttl, negativeTtl);
+            fetch.complete(account);
+            return account;
+        } catch (Throwable t) {
+            fetch.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(id, fetch);
+        }
+    }
+
+    /**
+     * Drops the cached account for the given id. Fetches already running for that id won't be cached.
+     *
+     * @param id The account id.
+     */
+    public void invalidate(@Nonnull final String id) {
+        cache.invalidate(id);
+        inFlight.remove(id);
+    }
+
+    /**
+     * Drops all cached accounts.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * @return Approximate amount of cached ids.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    static void store(@Nonnull final StripedCache<String, IAccount> cache, @Nonnull final String id, @Nullable final IAccount account,
+                      final long epoch, final long ttl, final long negativeTtl) {
+        if (account != null) {
+            cache.putIfUnchanged(id, account, System.nanoTime() + ttl, epoch);
+        } else if (negativeTtl > 0) {
+            cache.putIfUnchanged(id, null, System.nanoTime() + negativeTtl, epoch);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics keeping counters and latency histograms in memory, for you to export wherever you want through
+ * {@link #snapshot()}. Recording is lock-free and only touches {@link LongAdder}s.
+ * <p>
+ * Histograms have one bucket per power of two, so percentiles are exact to a factor of two, which is plenty to
+ * tell microseconds from milliseconds.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class DefaultTokenizeMetrics implements TokenizeMetrics {
+    private static final ValidationResult.Status[] STATUSES = ValidationResult.Status.values();
+
+    private final LongAdder[] outcomes = new LongAdder[STATUSES.length];
+    private final LongAdder otpValid = new LongAdder();
+    private final LongAdder otpInvalid = new LongAdder();
+    private final Recorder validationTime = new Recorder();
+    private final Recorder signatureTime = new Recorder();
+    private final Recorder fetchTime = new Recorder();
+    private final Recorder otpTime = new Recorder();
+
+    public DefaultTokenizeMetrics() {
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onValidation(@Nonnull final ValidationResult.Status outcome, final long nanos) {
+        outcomes[outcome.ordinal()].increment();
+        validationTime.record(nanos);
+    }
+
+    @Override
+    public void onSignature(final long nanos) {
+        signatureTime.record(nanos);
+    }
+
+    @Override
+    public void onFetch(final long nanos) {
+        fetchTime.record(nanos);
+    }
+
+    @Override
+    public void onOtpValidation(final boolean valid, final long nanos) {
+        (valid ? otpValid : otpInvalid).increment();
+        otpTime.record(nanos);
+    }
+
+    /**
+     * @return The current values. Values recorded while taking the snapshot may or may not be included.
+     */
+    @Nonnull
+    public Snapshot snapshot() {
+        final Map<ValidationResult.Status, Long> outcomes = new EnumMap<>(ValidationResult.Status.class);
+        for (final ValidationResult.Status status : STATUSES) {
+            outcomes.put(status, this.outcomes[status.ordinal()].sum());
+        }
+        return new Snapshot(Collections.unmodifiableMap(outcomes), otpValid.sum(), otpInvalid.sum(), validationTime.snapshot(),
+                signatureTime.snapshot(), fetchTime.snapshot(), otpTime.snapshot());
+    }
+
+    /**
+     * Resets everything to zero.
+     */
+    public void reset() {
+        for (final LongAdder outcome : outcomes) {
+            outcome.reset();
+        }
+        otpValid.reset();
+        otpInvalid.reset();
+        validationTime.reset();
+        signatureTime.reset();
+        fetchTime.reset();
+        otpTime.reset();
+    }
+
+    /**
+     * Point in time copy of the metrics.
+     */
+    public static final class Snapshot {
+        private final Map<ValidationResult.Status, Long> outcomes;
+        private final long otpValid;
+        private final long otpInvalid;
+        private final Histogram validationTime;
+        private final Histogram signatureTime;
+        private final Histogram fetchTime;
+        private final Histogram otpTime;
+
+        Snapshot(@Nonnull final Map<ValidationResult.Status, Long> outcomes, final long otpValid, final long otpInvalid, @Nonnull final Histogram validationTime,
+                 @Nonnull final Histogram signatureTime, @Nonnull final Histogram fetchTime, @Nonnull final Histogram otpTime) {
+            this.outcomes = outcomes;
+            this.otpValid = otpValid;
+            this.otpInvalid = otpInvalid;
+            this.validationTime = validationTime;
+            this.signatureTime = signatureTime;
+            this.fetchTime = fetchTime;
+            this.otpTime = otpTime;
+        }
+
+        /**
+         * @return Amount of validations per outcome.
+         */
+        @Nonnull
+        public Map<ValidationResult.Status, Long> getOutcomes() {
+            return outcomes;
+        }
+
+        public long getOutcome(@Nonnull final ValidationResult.Status status) {
+            return outcomes.get(status);
+        }
+
+        public long getOtpValid() {
+            return otpValid;
+        }
+
+        public long getOtpInvalid() {
+            return otpInvalid;
+        }
+
+        /**
+         * @return Durations of whole validations, batches excluded.
+         */
+        @Nonnull
+        public Histogram getValidationTime() {
+            return validationTime;
+        }
+
+        @Nonnull
+        public Histogram getSignatureTime() {
+            return signatureTime;
+        }
+
+        @Nonnull
+        public Histogram getFetchTime() {
+            return fetchTime;
+        }
+
+        @Nonnull
+        public Histogram getOtpTime() {
+            return otpTime;
+        }
+    }
+
+    /**
+     * Latency distribution. Bucket {@code i} counts durations below {@code 2^i} nanoseconds and at least
+     * {@code 2^(i - 1)}, bucket 0 counts zeroes.
+     */
+    public static final class Histogram {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+
+        Histogram(@Nonnull final long[] buckets, final long totalNanos) {
+            long count = 0;
+            for (final long bucket : buckets) {
+                count += bucket;
+            }
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / (double) count;
+        }
+
+        /**
+         * @param i The bucket index, between 0 and 63.
+         * @return The amount of durations in the bucket.
+         */
+        public long getBucket(final int i) {
+            return buckets[i];
+        }
+
+        /**
+         * @param quantile The quantile, between 0 and 1.
+         * @return An upper bound of the quantile, or 0 if nothing was recorded.
+         */
+        public long getPercentileNanos(final double quantile) {
+            final long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static final class Recorder {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder total = new LongAdder();
+
+        Recorder() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(final long nanos) {
+            if (nanos < 0) return;
+            buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+            total.add(nanos);
+        }
+
+        Histogram snapshot() {
+            final long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new Histogram(counts, total.sum());
+        }
+
+        void reset() {
+            for (final LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            total.reset();
+        }
+    }
+}
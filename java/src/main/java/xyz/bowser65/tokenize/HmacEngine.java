@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+
+/**
+ * Source of keyed {@link Mac} instances used by Tokenize to sign and verify tokens.
+ * Implementations must be thread-safe, and should hand out instances that are already keyed so callers
+ * never pay for a provider lookup or a key setup.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+public interface HmacEngine {
+    /**
+     * Borrows a keyed {@link Mac}. The instance must be given back using {@link #release(Mac)} once
+     * {@link Mac#doFinal()} has been called, and must not be used by another thread in the meantime.
+     *
+     * @return A keyed Mac, ready to be updated.
+     */
+    @Nonnull
+    Mac acquire();
+
+    /**
+     * Gives back a Mac obtained through {@link #acquire()}.
+     *
+     * @param mac The Mac to give back.
+     */
+    void release(@Nonnull Mac mac);
+
+    /**
+     * @return Name of the algorithm used by this engine.
+     */
+    @Nonnull
+    String getAlgorithm();
+
+    /**
+     * Creates an engine keeping one keyed Mac per thread. Best fit for a bounded set of platform threads.
+     *
+     * @param algorithm The HMAC algorithm.
+     * @param key       The secret key.
+     * @return The engine.
+     */
+    @Nonnull
+    static HmacEngine threadLocal(@Nonnull final String algorithm, @Nonnull final byte[] key) {
+        return new ThreadLocalHmacEngine(new MacPrototype(algorithm, key));
+    }
+
+    /**
+     * Creates an engine keeping keyed Macs in a shared pool. Best fit when a lot of short-lived threads
+     * sign tokens, since per-thread state would be thrown away with each thread.
+     *
+     * @param algorithm The HMAC algorithm.
+     * @param key       The secret key.
+     * @param maxIdle   Maximum amount of idle Macs kept in the pool.
+     * @return The engine.
+     */
+    @Nonnull
+    static HmacEngine pooled(@Nonnull final String algorithm, @Nonnull final byte[] key, final int maxIdle) {
+        return new PooledHmacEngine(new MacPrototype(algorithm, key), maxIdle);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Set of signing keys, each identified by a key id between 0 and 255 carried by version 2 tokens. Tokens are
+ * signed with the primary key, and validated with the key they name, so rotating a secret is a matter of adding
+ * the new key, making it primary, then retiring the old one once its tokens are gone.
+ * <p>
+ * Version 1 tokens can't carry a key id, and are always signed and validated with key 0.
+ * <p>
+ * Lookups are lock-free, changes are serialized.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class Keyring {
+    /**
+     * Amount of key ids available.
+     */
+    public static final int MAX_KEYS = 256;
+
+    private final AtomicReferenceArray<HmacEngine> engines = new AtomicReferenceArray<>(MAX_KEYS);
+    private volatile int primary = -1;
+    /**
+     * Bumped on every change, so caches of verified tokens know when to drop them.
+     */
+    private volatile long generation;
+
+    /**
+     * @param secret The secret, registered as key 0.
+     * @return A keyring with a single key.
+     */
+    @Nonnull
+    public static Keyring of(@Nonnull final byte[] secret) {
+        return new Keyring().add(0, secret);
+    }
+
+    /**
+     * @param engine The engine, registered as key 0.
+     * @return A keyring with a single key.
+     */
+    @Nonnull
+    public static Keyring of(@Nonnull final HmacEngine engine) {
+        return new Keyring().add(0, engine);
+    }
+
+    /**
+     * Adds a key signing with {@link Tokenize#ALGORITHM}. The first key added becomes the primary one.
+     *
+     * @param keyId  The id of the key.
+     * @param secret The secret.
+     * @return This keyring.
+     * @throws IllegalArgumentException If the id is invalid or already used.
+     */
+    @Nonnull
+    public Keyring add(final int keyId, @Nonnull final byte[] secret) {
+        return add(keyId, HmacEngine.threadLocal(Tokenize.ALGORITHM, secret));
+    }
+
+    /**
+     * Adds a key. The first key added becomes the primary one.
+     *
+     * @param keyId  The id of the key.
+     * @param engine The engine providing Macs keyed with it. Must use the same algorithm as the other keys.
+     * @return This keyring.
+     * @throws IllegalArgumentException If the id is invalid or already used, or the algorithm doesn't match.
+     */
+    @Nonnull
+    public synchronized Keyring add(final int keyId, @Nonnull final HmacEngine engine) {
+        checkKeyId(keyId);
+        if (engines.get(keyId) != null) {
+            throw new IllegalArgumentException("Key id " + keyId + " is already used.");
+        }
+        if (primary != -1 && !engines.get(primary).getAlgorithm().equals(engine.getAlgorithm())) {
+            throw new IllegalArgumentException("All keys must use " + engines.get(primary).getAlgorithm() + ".");
+        }
+        engines.set(keyId, engine);
+        if (primary == -1) {
+            primary = keyId;
+        }
+        generation++;
+        return this;
+    }
+
+    /**
+     * Makes a key the one new tokens are signed with.
+     *
+     * @param keyId The id of the key.
+     * @return This keyring.
+     * @throws IllegalArgumentException If there is no such key.
+     */
+    @Nonnull
+    public synchronized Keyring setPrimary(final int keyId) {
+        checkKeyId(keyId);
+        if (engines.get(keyId) == null) {
+            throw new IllegalArgumentException("There is no key with id " + keyId + ".");
+        }
+        primary = keyId;
+        generation++;
+        return this;
+    }
+
+    /**
+     * Removes a key. Tokens signed with it stop being valid.
+     *
+     * @param keyId The id of the key.
+     * @throws IllegalStateException If it is the primary key.
+     */
+    public synchronized void retire(final int keyId) {
+        checkKeyId(keyId);
+        if (keyId == primary) {
+            throw new IllegalStateException("The primary key cannot be retired.");
+        }
+        engines.set(keyId, null);
+        generation++;
+    }
+
+    /**
+     * @param keyId The id of the key.
+     * @return The engine of the key, or {@code null} if there is none.
+     */
+    @Nullable
+    public HmacEngine get(final int keyId) {
+        return keyId < 0 || keyId >= MAX_KEYS ? null : engines.get(keyId);
+    }
+
+    /**
+     * @return The id of the primary key, or -1 if the keyring is empty.
+     */
+    public int getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return A counter changing whenever keys are added, retired or made primary.
+     */
+    long generation() {
+        return generation;
+    }
+
+    private static void checkKeyId(final int keyId) {
+        if (keyId < 0 || keyId >= MAX_KEYS) {
+            throw new IllegalArgumentException("Key ids must be between 0 and " + (MAX_KEYS - 1) + ".");
+        }
+    }
+}
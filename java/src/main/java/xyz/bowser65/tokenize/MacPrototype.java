@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keyed Mac every other instance is cloned from. Cloning an initialized Mac copies the inner and outer pad
+ * state, so new instances skip both the provider lookup and the key setup.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class MacPrototype {
+    private final String algorithm;
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final boolean cloneable;
+
+    MacPrototype(@Nonnull final String algorithm, @Nonnull final byte[] key) {
+        this.algorithm = algorithm;
+        this.key = new SecretKeySpec(key, algorithm);
+        this.prototype = create();
+
+        boolean cloneable;
+        try {
+            prototype.clone();
+            cloneable = true;
+        } catch (CloneNotSupportedException e) {
+            cloneable = false;
+        }
+        this.cloneable = cloneable;
+    }
+
+    @Nonnull
+    String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Nonnull
+    Mac newMac() {
+        if (cloneable) {
+            try {
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("Mac stopped being cloneable", e);
+            }
+        }
+        return create();
+    }
+
+    private Mac create() {
+        try {
+            final Mac mac = Mac.getInstance(algorithm);
+            mac.init(key);
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Tokenize is unable to function if " + algorithm + " algorithm isn't present!", e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid key for " + algorithm, e);
+        }
+    }
+}
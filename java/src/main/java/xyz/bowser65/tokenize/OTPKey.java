@@ -32,7 +32,7 @@ import lombok.Getter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.security.SecureRandom;
+import java.io.IOException;
 
 /**
  * An OTP key
@@ -43,6 +43,8 @@ import java.security.SecureRandom;
 @Getter
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class OTPKey {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
     private final String key;
     private final String name;
     private final String issuer;
@@ -50,25 +52,91 @@ public class OTPKey {
 
     @Builder
     private OTPKey(@Nonnull final String name, @Nullable final String issuer, final boolean hotp) {
+        this(name, issuer, hotp, randomKey());
+    }
+
+    OTPKey(@Nonnull final String name, @Nullable final String issuer, final boolean hotp, @Nonnull final String key) {
         this.name = name;
         this.issuer = issuer;
         this.hotp = hotp;
+        this.key = key;
+    }
+
+    @Nonnull
+    private static String randomKey() {
+        // 10 bytes encode to 16 Base32 characters
+        final byte[] key = new byte[10];
+        OTPUtils.random().nextBytes(key);
+        return Base32.encode(key);
+    }
 
-        final SecureRandom secureRandom = new SecureRandom();
-        final char[] key = new char[16];
-        for (int i = 0; i < 16; ++i)
-            key[i] = Base32.ALPHABET[secureRandom.nextInt(Base32.ALPHABET.length)];
-        this.key = new String(key);
+    /**
+     * @return A verifier for this key
+     */
+    public OtpVerifier verifier() {
+        return OtpVerifier.of(key);
     }
 
     /**
      * @return A Google Authenticator compliant URI for this key
      */
     public String getGoogleURI() {
-        String url = "otpauth://" + (hotp ? 'h' : 't') + "otp/" + name + "?secret=" + key;
+        final StringBuilder uri = new StringBuilder(64 + name.length() + key.length());
+        try {
+            appendGoogleURI(uri);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return uri.toString();
+    }
+
+    /**
+     * Writes the Google Authenticator compliant URI for this key, for callers streaming a lot of them.
+     *
+     * @param out Where the URI is written to.
+     * @throws IOException If writing fails.
+     */
+    public void appendGoogleURI(@Nonnull final Appendable out) throws IOException {
+        out.append("otpauth://").append(hotp ? 'h' : 't').append("otp/");
+        appendEncoded(out, name);
+        out.append("?secret=").append(key);
         if (issuer != null) {
-            url += "&issuer=" + issuer;
+            out.append("&issuer=");
+            appendEncoded(out, issuer);
+        }
+    }
+
+    /**
+     * Percent-encodes the UTF-8 bytes of everything but unreserved characters (RFC 3986).
+     */
+    private static void appendEncoded(@Nonnull final Appendable out, @Nonnull final String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '.' || c == '_' || c == '~') {
+                out.append(c);
+            } else if (c < 0x80) {
+                appendPercent(out, c);
+            } else if (c < 0x800) {
+                appendPercent(out, 0xc0 | c >> 6);
+                appendPercent(out, 0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, value.charAt(++i));
+                appendPercent(out, 0xf0 | cp >> 18);
+                appendPercent(out, 0x80 | cp >> 12 & 0x3f);
+                appendPercent(out, 0x80 | cp >> 6 & 0x3f);
+                appendPercent(out, 0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates can't be encoded, String#getBytes replaces them the same way.
+                appendPercent(out, '?');
+            } else {
+                appendPercent(out, 0xe0 | c >> 12);
+                appendPercent(out, 0x80 | c >> 6 & 0x3f);
+                appendPercent(out, 0x80 | c & 0x3f);
+            }
         }
-        return url;
+    }
+
+    private static void appendPercent(@Nonnull final Appendable out, final int b) throws IOException {
+        out.append('%').append(HEX[b >> 4 & 0xf]).append(HEX[b & 0xf]);
     }
 }
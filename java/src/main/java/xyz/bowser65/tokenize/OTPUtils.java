@@ -28,60 +28,114 @@
 package xyz.bowser65.tokenize;
 
 import javax.annotation.Nonnull;
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import java.security.SecureRandom;
 
 /**
- * Utility class to handle OTP authentication tokens
+ * Utility class to handle OTP authentication tokens. Keyed verifiers of recently used secrets are kept around, but
+ * when checking codes for the same secret repeatedly, prefer holding an {@link OtpVerifier}.
  *
  * @author Bowser65
  * @since 09/04/20
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class OTPUtils {
-    private static final Map<String, String> lastUsedCodes = new HashMap<>();
+    /**
+     * Duration of a TOTP time step, in milliseconds.
+     */
+    static final long TOTP_STEP = 30_000;
 
-    public synchronized static boolean validateHotp(@Nonnull final String token, @Nonnull final String secret, final long counter) {
-        if (lastUsedCodes.getOrDefault(secret, "").equals(token)) return false;
-        if (!Pattern.matches("^[0-9]{6}$", token)) throw new IllegalArgumentException("Token must be 6 digits.");
-        if (computeToken(secret, counter).equals(token)) {
-            lastUsedCodes.put(secret, token);
-            return true;
-        }
-        return false;
+    /**
+     * Maximum amount of secrets whose keyed verifier is kept around.
+     */
+    static final int VERIFIER_CACHE_SIZE = 1024;
+
+    private static final OtpReplayCache lastUsedCodes = OtpReplayCache.builder().build();
+    private static final StripedCache<String, OtpVerifier> verifiers = new StripedCache<>(VERIFIER_CACHE_SIZE);
+    /**
+     * Seeding a SecureRandom is expensive, and instances serialize concurrent callers, so each thread keeps one.
+     */
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static volatile TokenizeMetrics metrics = TokenizeMetrics.NOOP;
+
+    /**
+     * Sets the listener notified of OTP checks, including the ones made through {@link OtpVerifier}s.
+     *
+     * @param metrics The listener, or {@code null} for none.
+     */
+    public static void setMetrics(@Nullable final TokenizeMetrics metrics) {
+        OTPUtils.metrics = metrics == null ? TokenizeMetrics.NOOP : metrics;
+    }
+
+    @Nonnull
+    static TokenizeMetrics metrics() {
+        return metrics;
+    }
+
+    public static boolean validateHotp(@Nonnull final String token, @Nonnull final String secret, final long counter) {
+        return validate(token, secret, counter, Long.MAX_VALUE);
+    }
+
+    public static boolean validateTotp(@Nonnull final String token, @Nonnull final String secret) {
+        final long step = System.currentTimeMillis() / TOTP_STEP;
+        return validate(token, secret, step, (step + 1) * TOTP_STEP);
+    }
+
+    /**
+     * Validates an HOTP code against the expected counter and the {@code lookAhead} ones following it.
+     *
+     * @return The counter the code matched, or -1 if it is invalid.
+     * @see OtpVerifier#validateHotp(CharSequence, long, int)
+     */
+    public static long validateHotp(@Nonnull final String token, @Nonnull final String secret, final long counter, final int lookAhead) {
+        return verifier(secret).validateHotp(token, counter, lookAhead);
+    }
+
+    /**
+     * Validates a TOTP code for the current time step, or any of the {@code window} steps around it.
+     *
+     * @return The time step the code matched, or -1 if it is invalid.
+     * @see OtpVerifier#validateTotp(CharSequence, int)
+     */
+    public static long validateTotp(@Nonnull final String token, @Nonnull final String secret, final int window) {
+        return verifier(secret).validateTotp(token, window);
+    }
+
+    /**
+     * @return A verifier for the secret sharing the default replay cache, keyed on first use and then reused.
+     */
+    @Nonnull
+    static OtpVerifier verifier(@Nonnull final String secret) {
+        final StripedCache.Entry<OtpVerifier> entry = verifiers.get(secret, 0);
+        if (entry != null && entry.value != null) return entry.value;
+        final OtpVerifier verifier = OtpVerifier.of(secret, lastUsedCodes);
+        verifiers.put(secret, verifier, Long.MAX_VALUE);
+        return verifier;
+    }
+
+    /**
+     * @return The replay cache shared by all OTP checks that don't bring their own.
+     */
+    @Nonnull
+    static OtpReplayCache replayCache() {
+        return lastUsedCodes;
     }
 
-    public synchronized static boolean validateTotp(@Nonnull final String token, @Nonnull final String secret) {
-        return validateHotp(token, secret, System.currentTimeMillis() / 30 / 1000);
+    /**
+     * @return The calling thread's random generator for OTP secrets.
+     */
+    @Nonnull
+    static SecureRandom random() {
+        return RANDOM.get();
     }
 
-    private synchronized static String computeToken(final String secret, long counter) {
-        try {
-            final byte[] key = Base32.decode(secret);
-            final byte[] buf = new byte[8];
-            for (int i = 0; i < 8; i++) {
-                buf[7 - i] = (byte) (counter & 0xff);
-                counter = counter >> 8;
-            }
-            final Mac hmac = Mac.getInstance("HmacSHA1");
-            hmac.init(new SecretKeySpec(key, "HmacSHA1"));
-            final byte[] digest = hmac.doFinal(buf);
-            final int offset = digest[digest.length - 1] & 0xf;
-            final int code = (digest[offset] & 0x7f) << 24 |
-                    (digest[offset + 1] & 0xff) << 16 |
-                    (digest[offset + 2] & 0xff) << 8 |
-                    (digest[offset + 3] & 0xff);
-            final String str = String.format("%6s", code).replace(' ', '0');
-            return str.substring(str.length() - 6);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Tokenize is unable to function if HmacSHA1 algorithm isn't present!", e);
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException("is this ever reachable?", e);
-        }
+    private static boolean validate(@Nonnull final String token, @Nonnull final String secret, final long counter, final long expiresAt) {
+        final TokenizeMetrics metrics = OTPUtils.metrics;
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final int code = OtpVerifier.parseCode(token);
+        // The code is computed before touching the replay cache, which only locks the segment of this secret.
+        final boolean valid = verifier(secret).computeCode(counter) == code && lastUsedCodes.markUsed(secret, counter, expiresAt);
+        if (metrics != TokenizeMetrics.NOOP) metrics.onOtpValidation(valid, System.nanoTime() - start);
+        return valid;
     }
 }
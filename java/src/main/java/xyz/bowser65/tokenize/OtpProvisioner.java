@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Generates OTP keys in bulk, for example when enrolling all users of a tenant at once. Random bytes are drawn in
+ * blocks from a per-thread {@link SecureRandom}, so generating keys from several threads doesn't contend.
+ * <p>
+ * Store {@link OTPKey#getKey()} and stream {@link OTPKey#appendGoogleURI(Appendable)} wherever the URIs go.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OtpProvisioner {
+    /**
+     * Amount of bytes drawn from the random generator at once.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    @Nullable
+    private final String issuer;
+    private final boolean hotp;
+    private final int secretLength;
+
+    /**
+     * @param issuer       The issuer of all keys, if any.
+     * @param hotp         Whether keys are for HOTP rather than TOTP.
+     * @param secretLength Length of the secrets in bytes, between 10 and 64. Defaults to 10, the length
+     *                     {@link OTPKey#builder()} uses, which encodes to 16 Base32 characters.
+     */
+    @Builder
+    private OtpProvisioner(@Nullable final String issuer, final boolean hotp, final int secretLength) {
+        if (secretLength != 0 && (secretLength < 10 || secretLength > 64)) {
+            throw new IllegalArgumentException("Secret length must be between 10 and 64 bytes.");
+        }
+        this.issuer = issuer;
+        this.hotp = hotp;
+        this.secretLength = secretLength == 0 ? 10 : secretLength;
+    }
+
+    /**
+     * @param name The name of the key, usually the account it's for.
+     * @return A new key.
+     */
+    @Nonnull
+    public OTPKey generate(@Nonnull final String name) {
+        final byte[] secret = new byte[secretLength];
+        OTPUtils.random().nextBytes(secret);
+        return new OTPKey(name, issuer, hotp, Base32.encode(secret));
+    }
+
+    /**
+     * @param names The names of the keys.
+     * @return One new key per name, in iteration order.
+     */
+    @Nonnull
+    public List<OTPKey> generate(@Nonnull final Collection<String> names) {
+        final List<OTPKey> keys = new ArrayList<>(names.size());
+        generate(names.iterator(), keys::add);
+        return keys;
+    }
+
+    /**
+     * Generates keys one after the other, without holding on to them.
+     *
+     * @param names    The names of the keys.
+     * @param consumer Receives one new key per name, in iteration order.
+     * @return The amount of keys generated.
+     */
+    public long generate(@Nonnull final Iterator<String> names, @Nonnull final Consumer<? super OTPKey> consumer) {
+        final SecureRandom random = OTPUtils.random();
+        final byte[] block = new byte[BLOCK_SIZE / secretLength * secretLength];
+        int offset = block.length;
+        long count = 0;
+        while (names.hasNext()) {
+            final String name = names.next();
+            if (offset == block.length) {
+                random.nextBytes(block);
+                offset = 0;
+            }
+            consumer.accept(new OTPKey(name, issuer, hotp, Base32.encode(block, offset, secretLength)));
+            offset += secretLength;
+            count++;
+        }
+        // Don't leave secrets lying around in memory longer than needed.
+        Arrays.fill(block, (byte) 0);
+        return count;
+    }
+}
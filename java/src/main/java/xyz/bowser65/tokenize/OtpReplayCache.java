@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last OTP counter accepted for each secret, so a code can't be used twice. Secrets are spread over
+ * independently locked segments, and the amount of remembered secrets is bounded.
+ * <p>
+ * TOTP entries are dropped once their code can no longer be valid. HOTP codes never expire by themselves, so HOTP
+ * entries are kept until a higher counter replaces them. Once full, the least recently used secrets are forgotten
+ * first: size the cache for the amount of HOTP keys plus the amount of users that may log in during the lifetime of
+ * a TOTP code, otherwise codes of forgotten secrets could be replayed.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OtpReplayCache {
+    private final Segment[] segments;
+    private final int mask;
+
+    /**
+     * @param maximumSize Maximum amount of remembered secrets. Defaults to 100 000.
+     */
+    @Builder
+    private OtpReplayCache(final long maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Maximum size cannot be negative.");
+        }
+        final long size = maximumSize == 0 ? 100_000 : maximumSize;
+        final int count = (int) Math.min(64, Long.highestOneBit(size));
+        final int capacity = (int) Math.min(Integer.MAX_VALUE, (size + count - 1) / count);
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Marks a HOTP counter as used for a secret. Fails if that counter, or a later one, has already been used. The
+     * entry never expires, only a higher counter replaces it.
+     *
+     * @param secret  The OTP secret.
+     * @param counter The HOTP counter the code was valid for.
+     * @return Whether the counter wasn't used before, and thus whether the code should be accepted.
+     */
+    public boolean markUsed(@Nonnull final String secret, final long counter) {
+        return markUsed(secret, counter, Long.MAX_VALUE);
+    }
+
+    /**
+     * Marks a counter as used for a secret. Fails if that counter, or a later one, has already been used and
+     * hasn't expired yet.
+     *
+     * @param secret    The OTP secret.
+     * @param counter   The HOTP counter, or TOTP time step, the code was valid for.
+     * @param expiresAt Time in milliseconds after which the code can no longer be accepted anyway.
+     * @return Whether the counter wasn't used before, and thus whether the code should be accepted.
+     */
+    public boolean markUsed(@Nonnull final String secret, final long counter, final long expiresAt) {
+        final long now = System.currentTimeMillis();
+        final int h = secret.hashCode();
+        final Segment segment = segments[(h ^ h >>> 16) & mask];
+        synchronized (segment) {
+            final Used used = segment.get(secret);
+            if (used == null) {
+                segment.put(secret, new Used(counter, expiresAt));
+                return true;
+            }
+            if (used.expiresAt > now && used.counter >= counter) {
+                return false;
+            }
+            used.counter = counter;
+            used.expiresAt = expiresAt;
+            return true;
+        }
+    }
+
+    /**
+     * Forgets every used code.
+     */
+    public void clear() {
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Amount of remembered secrets, including expired ones not purged yet.
+     */
+    public long size() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private static final class Used {
+        long counter;
+        long expiresAt;
+
+        Used(final long counter, final long expiresAt) {
+            this.counter = counter;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Used> {
+        private final int capacity;
+
+        Segment(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Used> eldest) {
+            return size() > capacity || eldest.getValue().expiresAt <= System.currentTimeMillis();
+        }
+    }
+}
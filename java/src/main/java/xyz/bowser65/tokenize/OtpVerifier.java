@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Precompiled OTP verifier for a single secret. The secret is decoded and keyed once, and codes are computed and
+ * compared as numbers, so checking a code doesn't allocate.
+ * <p>
+ * Instances are thread-safe. Build one per {@link OTPKey} or secret and keep it around, e.g. next to the user.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class OtpVerifier {
+    static final String ALGORITHM = "HmacSHA1";
+    private static final int DIGITS = 6;
+    private static final int MODULO = 1_000_000;
+
+    private final String secret;
+    private final MacPrototype prototype;
+    private final OtpReplayCache replayCache;
+    private final AtomicReference<State> idle = new AtomicReference<>();
+
+    private OtpVerifier(@Nonnull final String secret, @Nonnull final OtpReplayCache replayCache) {
+        this.secret = secret;
+        this.prototype = new MacPrototype(ALGORITHM, Base32.decode(secret, true));
+        this.replayCache = replayCache;
+    }
+
+    /**
+     * @param secret The Base32 OTP secret.
+     * @return A verifier sharing its replay protection with {@link OTPUtils}.
+     */
+    @Nonnull
+    public static OtpVerifier of(@Nonnull final String secret) {
+        return new OtpVerifier(secret, OTPUtils.replayCache());
+    }
+
+    /**
+     * @param secret      The Base32 OTP secret.
+     * @param replayCache The cache remembering used codes.
+     * @return The verifier.
+     */
+    @Nonnull
+    public static OtpVerifier of(@Nonnull final String secret, @Nonnull final OtpReplayCache replayCache) {
+        return new OtpVerifier(secret, replayCache);
+    }
+
+    /**
+     * Validates an HOTP code. A code is only valid once.
+     *
+     * @param token   The 6 digits code.
+     * @param counter The HOTP counter.
+     * @return Whether the code is valid.
+     * @throws IllegalArgumentException If the code isn't made of 6 digits.
+     */
+    public boolean validateHotp(@Nonnull final CharSequence token, final long counter) {
+        return validateHotp(token, counter, 0) != -1;
+    }
+
+    /**
+     * Validates an HOTP code against the expected counter and the {@code lookAhead} ones following it, to
+     * resynchronise tokens whose counter drifted. A code is only valid once.
+     *
+     * @param token     The 6 digits code.
+     * @param counter   The expected HOTP counter.
+     * @param lookAhead How many counters after the expected one are accepted.
+     * @return The counter the code matched, or -1 if it is invalid. Callers should store the next expected
+     * counter as this value plus one.
+     * @throws IllegalArgumentException If the code isn't made of 6 digits, or the look-ahead is negative.
+     */
+    public long validateHotp(@Nonnull final CharSequence token, final long counter, final int lookAhead) {
+        if (lookAhead < 0) throw new IllegalArgumentException("Look-ahead cannot be negative.");
+        final TokenizeMetrics metrics = OTPUtils.metrics();
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final int code = parseCode(token);
+        final State state = acquire();
+        long matched = -1;
+        try {
+            for (long c = counter; c <= counter + lookAhead; c++) {
+                if (state.compute(c) == code) {
+                    matched = c;
+                    break;
+                }
+            }
+        } finally {
+            release(state);
+        }
+        final boolean valid = matched != -1 && replayCache.markUsed(secret, matched);
+        if (metrics != TokenizeMetrics.NOOP) metrics.onOtpValidation(valid, System.nanoTime() - start);
+        return valid ? matched : -1;
+    }
+
+    /**
+     * Validates a TOTP code for the current time step. A code is only valid once.
+     *
+     * @param token The 6 digits code.
+     * @return Whether the code is valid.
+     * @throws IllegalArgumentException If the code isn't made of 6 digits.
+     */
+    public boolean validateTotp(@Nonnull final CharSequence token) {
+        return validateTotp(token, 0) != -1;
+    }
+
+    /**
+     * Validates a TOTP code for the current time step, or any of the {@code window} steps before and after it to
+     * absorb clock skew. Closest steps are tried first. A code is only valid once, and once a step has been used
+     * the ones before it are rejected too.
+     *
+     * @param token  The 6 digits code.
+     * @param window How many steps before and after the current one are accepted.
+     * @return The time step the code matched, or -1 if it is invalid. Comparing it to the current step gives the
+     * skew of the user's clock.
+     * @throws IllegalArgumentException If the code isn't made of 6 digits, or the window is negative.
+     */
+    public long validateTotp(@Nonnull final CharSequence token, final int window) {
+        if (window < 0) throw new IllegalArgumentException("Window cannot be negative.");
+        final TokenizeMetrics metrics = OTPUtils.metrics();
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final int code = parseCode(token);
+        final long step = System.currentTimeMillis() / OTPUtils.TOTP_STEP;
+        final State state = acquire();
+        long matched = -1;
+        try {
+            for (int i = 0; i <= 2 * window; i++) {
+                // 0, -1, +1, -2, +2...
+                final long candidate = (i & 1) == 0 ? step + i / 2 : step - (i + 1) / 2;
+                if (candidate >= 0 && state.compute(candidate) == code) {
+                    matched = candidate;
+                    break;
+                }
+            }
+        } finally {
+            release(state);
+        }
+        // The code stays acceptable until the window moved past its step, so it must be remembered that long.
+        final boolean valid = matched != -1 && replayCache.markUsed(secret, matched, (matched + window + 1) * OTPUtils.TOTP_STEP);
+        if (metrics != TokenizeMetrics.NOOP) metrics.onOtpValidation(valid, System.nanoTime() - start);
+        return valid ? matched : -1;
+    }
+
+    /**
+     * @param counter The HOTP counter, or TOTP time step.
+     * @return The code for that counter, as a number.
+     */
+    public int computeCode(final long counter) {
+        final State state = acquire();
+        try {
+            return state.compute(counter);
+        } finally {
+            release(state);
+        }
+    }
+
+    @Nonnull
+    private State acquire() {
+        final State state = idle.getAndSet(null);
+        return state == null ? new State(prototype.newMac()) : state;
+    }
+
+    private void release(@Nonnull final State state) {
+        idle.set(state);
+    }
+
+    /**
+     * Computes a code without any precomputed state, for one-off checks.
+     */
+    static int computeCode(@Nonnull final String secret, final long counter) {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(Base32.decode(secret, true), ALGORITHM));
+            return new State(mac).compute(counter);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Tokenize is unable to function if " + ALGORITHM + " algorithm isn't present!", e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid OTP secret", e);
+        }
+    }
+
+    /**
+     * @return The code as a number.
+     * @throws IllegalArgumentException If the code isn't made of 6 digits.
+     */
+    static int parseCode(@Nonnull final CharSequence token) {
+        if (token.length() != DIGITS) throw new IllegalArgumentException("Token must be 6 digits.");
+        int code = 0;
+        for (int i = 0; i < DIGITS; i++) {
+            final int digit = token.charAt(i) - '0';
+            if (digit < 0 || digit > 9) throw new IllegalArgumentException("Token must be 6 digits.");
+            code = code * 10 + digit;
+        }
+        return code;
+    }
+
+    /**
+     * Keyed Mac and the buffers used with it. Only ever used by one thread at a time.
+     */
+    private static final class State {
+        private final Mac mac;
+        private final byte[] counter = new byte[8];
+        private final byte[] digest;
+
+        State(@Nonnull final Mac mac) {
+            this.mac = mac;
+            this.digest = new byte[mac.getMacLength()];
+        }
+
+        int compute(long value) {
+            for (int i = 7; i >= 0; i--) {
+                counter[i] = (byte) value;
+                value >>>= 8;
+            }
+            mac.update(counter);
+            try {
+                mac.doFinal(digest, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+
+            final int offset = digest[digest.length - 1] & 0xf;
+            final int code = (digest[offset] & 0x7f) << 24 |
+                    (digest[offset + 1] & 0xff) << 16 |
+                    (digest[offset + 2] & 0xff) << 8 |
+                    (digest[offset + 3] & 0xff);
+            return code % MODULO;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Fields of a token whose signature has been verified.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class ParsedToken {
+    /**
+     * Returned instead of throwing when parsing leniently.
+     */
+    static final ParsedToken MALFORMED = new ParsedToken(null, "", -1, null);
+    static final ParsedToken BAD_SIGNATURE = new ParsedToken(null, "", -1, null);
+
+    @Nullable
+    final String prefix;
+    /**
+     * Only built on demand for tokens parsed with numeric ids. Like {@link String#hashCode()}, racing threads
+     * at worst build it twice.
+     */
+    private String id;
+    /**
+     * The id as a number, or {@code -1} if it isn't a canonical positive long.
+     */
+    final long numericId;
+    final long genTime;
+    /**
+     * The token this was parsed from, when it was given as a String.
+     */
+    @Nullable
+    final String source;
+
+    ParsedToken(@Nullable final String prefix, @Nonnull final String id, final long genTime, @Nullable final String source) {
+        this.prefix = prefix;
+        this.id = id;
+        this.numericId = TokenCodec.parseCanonicalLong(id);
+        this.genTime = genTime;
+        this.source = source;
+    }
+
+    ParsedToken(@Nullable final String prefix, final long numericId, final long genTime, @Nullable final String source) {
+        this.prefix = prefix;
+        this.numericId = numericId;
+        this.genTime = genTime;
+        this.source = source;
+    }
+
+    /**
+     * @return The account id.
+     */
+    @Nonnull
+    String id() {
+        String id = this.id;
+        if (id == null) {
+            this.id = id = Long.toString(numericId);
+        }
+        return id;
+    }
+
+    /**
+     * @return Whether this is an actual token, and not one of the lenient parsing failures.
+     */
+    boolean isVerified() {
+        return this != MALFORMED && this != BAD_SIGNATURE;
+    }
+}
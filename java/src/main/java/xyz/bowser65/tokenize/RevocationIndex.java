@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap table of {@link IAccount#tokensValidSince()} values, letting {@link Tokenize} check revocation without
+ * fetching accounts. It is an open addressing hash table keyed by a 64-bit hash of the account id, stored in a
+ * direct buffer or in a memory-mapped file shared by every JVM of a host and surviving restarts.
+ * <p>
+ * Writes are serialized within a JVM, but when a file is shared only one process should write to it. Two ids
+ * sharing a hash share their entry, which keeps the latest of both values, so a collision can only revoke tokens
+ * early, never keep revoked tokens valid.
+ * <p>
+ * Slots are guarded by striped locks: every read and write of a slot holds the lock of its stripe, so a reader
+ * always sees a hash together with its own value, and readers only wait on writes to the same stripe. Other
+ * processes sharing the file read without those locks. For them, a new entry has its value written before its
+ * hash and values are stored plus one, so an entry seen half-written reads as a miss. Only clear a shared file
+ * while no other process reads it.
+ * <p>
+ * Entries can't be removed, revoking all tokens of a deleted account is done by putting {@link Long#MAX_VALUE}.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class RevocationIndex {
+    /**
+     * Largest amount of accounts an index can hold.
+     */
+    public static final int MAX_ACCOUNTS = 50_000_000;
+
+    private static final int MAGIC = 0x544b5249; // TKRI
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    private static final int STRIPES = 64;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int maxSize;
+    /**
+     * Slot {@code i} is guarded by {@code locks[i % STRIPES]}.
+     */
+    private final Object[] locks = new Object[STRIPES];
+
+    private RevocationIndex(@Nonnull final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.mask = capacity - 1;
+        this.maxSize = (int) (capacity * 3L / 4);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @param expectedAccounts The amount of accounts the index must be able to hold.
+     * @return An index stored in a direct buffer.
+     */
+    @Nonnull
+    public static RevocationIndex allocate(final int expectedAccounts) {
+        final int capacity = capacityFor(expectedAccounts);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + capacity * SLOT_SIZE);
+        writeHeader(buffer, capacity);
+        return new RevocationIndex(buffer);
+    }
+
+    /**
+     * Opens an index stored in a file, creating it if it doesn't exist. An existing file keeps its capacity.
+     *
+     * @param file             The file.
+     * @param expectedAccounts The amount of accounts the index must be able to hold, when it is created.
+     * @return An index mapped to the file.
+     * @throws IOException If the file can't be mapped, or isn't an index.
+     */
+    @Nonnull
+    public static RevocationIndex open(@Nonnull final Path file, final int expectedAccounts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final boolean created = channel.size() == 0;
+            final int capacity;
+            if (created) {
+                capacity = capacityFor(expectedAccounts);
+            } else {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) break;
+                }
+                if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                    throw new IOException(file + " isn't a revocation index");
+                }
+                capacity = header.getInt(CAPACITY_OFFSET);
+                if (Integer.bitCount(capacity) != 1 || capacity > capacityFor(MAX_ACCOUNTS) || channel.size() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+                    throw new IOException(file + " is corrupted");
+                }
+            }
+
+            // The mapping stays valid once the channel is closed.
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            if (created) {
+                writeHeader(buffer, capacity);
+            }
+            return new RevocationIndex(buffer);
+        }
+    }
+
+    /**
+     * @param id The account id.
+     * @return The Tokenize timestamp since when tokens of the account are valid, or -1 if the index doesn't know it.
+     */
+    public long get(@Nonnull final String id) {
+        final long hash = hash(id);
+        for (int i = (int) hash & mask, probes = 0; probes < capacity; i = i + 1 & mask, probes++) {
+            final int offset = HEADER_SIZE + i * SLOT_SIZE;
+            synchronized (locks[i & STRIPES - 1]) {
+                final long slotHash = buffer.getLong(offset);
+                if (slotHash == 0) return -1;
+                if (slotHash == hash) {
+                    // Values are stored plus one, so an entry another process is still writing is a miss.
+                    return buffer.getLong(offset + 8) - 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Sets the Tokenize timestamp since when tokens of an account are valid.
+     *
+     * @param id         The account id.
+     * @param validSince The timestamp, as returned by {@link IAccount#tokensValidSince()}.
+     * @throws IllegalStateException If the index is full.
+     */
+    public synchronized void put(@Nonnull final String id, final long validSince) {
+        if (validSince < 0) throw new IllegalArgumentException("Timestamps cannot be negative.");
+        final long stored = validSince == Long.MAX_VALUE ? Long.MAX_VALUE : validSince + 1;
+        final long hash = hash(id);
+        for (int i = (int) hash & mask; ; i = i + 1 & mask) {
+            final int offset = HEADER_SIZE + i * SLOT_SIZE;
+            // Slots only change under this instance's lock, which is held, so reading them needs no stripe lock.
+            final long slotHash = buffer.getLong(offset);
+            if (slotHash == hash) {
+                synchronized (locks[i & STRIPES - 1]) {
+                    buffer.putLong(offset + 8, Math.max(stored, buffer.getLong(offset + 8)));
+                }
+                return;
+            }
+            if (slotHash == 0) {
+                final int size = buffer.getInt(SIZE_OFFSET);
+                if (size >= maxSize) {
+                    throw new IllegalStateException("The revocation index is full.");
+                }
+                synchronized (locks[i & STRIPES - 1]) {
+                    buffer.putLong(offset + 8, stored);
+                    buffer.putLong(offset, hash);
+                }
+                buffer.putInt(SIZE_OFFSET, size + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sets the timestamp of an account to its current value.
+     */
+    public void put(@Nonnull final IAccount account) {
+        put(account.getTokenId(), account.tokensValidSince());
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int i = stripe; i < capacity; i += STRIPES) {
+                    buffer.putLong(HEADER_SIZE + i * SLOT_SIZE, 0);
+                    buffer.putLong(HEADER_SIZE + i * SLOT_SIZE + 8, 0);
+                }
+            }
+        }
+        buffer.putInt(SIZE_OFFSET, 0);
+    }
+
+    /**
+     * @return The amount of accounts in the index.
+     */
+    public int size() {
+        return buffer.getInt(SIZE_OFFSET);
+    }
+
+    /**
+     * @return The amount of accounts the index can hold.
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Writes changes of a file backed index to the disk.
+     */
+    public void force() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private static int capacityFor(final int expectedAccounts) {
+        if (expectedAccounts <= 0 || expectedAccounts > MAX_ACCOUNTS) {
+            throw new IllegalArgumentException("Expected accounts must be between 1 and " + MAX_ACCOUNTS + ".");
+        }
+        final long slots = expectedAccounts * 4L / 3 + 1;
+        return Math.max(16, Integer.highestOneBit((int) slots - 1) << 1);
+    }
+
+    private static void writeHeader(@Nonnull final ByteBuffer buffer, final int capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(SIZE_OFFSET, 0);
+    }
+
+    /**
+     * FNV-1a over the characters, mixed with the MurmurHash3 finalizer. Must never change, as it is persisted.
+     */
+    static long hash(@Nonnull final String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
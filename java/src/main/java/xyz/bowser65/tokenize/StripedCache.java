@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map with per-entry expiry. Keys are spread over independently locked segments, each one evicting its
+ * least recently used entry once full, so concurrent readers rarely wait on each other.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class StripedCache<K, V> {
+    private final Segment<K, V>[] segments;
+    private final int mask;
+
+    @SuppressWarnings("unchecked")
+    StripedCache(final long maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1.");
+        }
+        final int count = (int) Math.min(16, Long.highestOneBit(maximumSize));
+        final int capacity = (int) Math.min(Integer.MAX_VALUE, (maximumSize + count - 1) / count);
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(capacity);
+        }
+    }
+
+    /**
+     * @return The entry, or {@code null} if there is none or if it expired.
+     */
+    @Nullable
+    Entry<V> get(@Nonnull final K key, final long now) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            final Entry<V> entry = segment.get(key);
+            if (entry == null) return null;
+            if (now - entry.expiresAt >= 0) {
+                segment.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    void put(@Nonnull final K key, @Nullable final V value, final long expiresAt) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * @return Invalidation epoch of the segment holding the key, to pass to {@link #putIfUnchanged}.
+     */
+    long epoch(@Nonnull final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.epoch;
+        }
+    }
+
+    /**
+     * Stores a value only if nothing got invalidated in its segment since {@code epoch} was read. Used to make sure
+     * a value loaded before an invalidation doesn't end up in the cache after it.
+     *
+     * @return Whether the value got stored.
+     */
+    boolean putIfUnchanged(@Nonnull final K key, @Nullable final V value, final long expiresAt, final long epoch) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.epoch != epoch) return false;
+            segment.put(key, new Entry<>(value, expiresAt));
+            return true;
+        }
+    }
+
+    void invalidate(@Nonnull final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.epoch++;
+            segment.remove(key);
+        }
+    }
+
+    void clear() {
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.epoch++;
+                segment.clear();
+            }
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segmentFor(@Nonnull final K key) {
+        final int h = key.hashCode();
+        return segments[(h ^ h >>> 16) & mask];
+    }
+
+    static final class Entry<V> {
+        @Nullable
+        final V value;
+        final long expiresAt;
+
+        Entry(@Nullable final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int capacity;
+        private long epoch;
+
+        Segment(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+            return size() > capacity;
+        }
+    }
+}
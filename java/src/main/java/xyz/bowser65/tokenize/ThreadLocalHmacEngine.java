@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+
+/**
+ * HMAC engine keeping one keyed Mac per thread.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class ThreadLocalHmacEngine implements HmacEngine {
+    private final MacPrototype prototype;
+    private final ThreadLocal<Mac> macs;
+
+    ThreadLocalHmacEngine(@Nonnull final MacPrototype prototype) {
+        this.prototype = prototype;
+        this.macs = ThreadLocal.withInitial(prototype::newMac);
+    }
+
+    @Nonnull
+    @Override
+    public Mac acquire() {
+        return macs.get();
+    }
+
+    @Override
+    public void release(@Nonnull final Mac mac) {
+        // The Mac stays bound to its thread, only make sure the next user gets a clean one.
+        mac.reset();
+    }
+
+    @Nonnull
+    @Override
+    public String getAlgorithm() {
+        return prototype.getAlgorithm();
+    }
+}
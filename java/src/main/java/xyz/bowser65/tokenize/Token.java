@@ -31,8 +31,7 @@ import lombok.Getter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.util.function.Supplier;
 
 /**
  * Represents a Tokenize token
@@ -43,12 +42,24 @@ import java.util.Base64;
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class Token {
     private final Tokenize tokenize;
-    @Getter
-    private final IAccount account;
+    /**
+     * The account, or {@code null} until the loader fetched it.
+     */
+    private IAccount account;
+    private final String accountId;
+    /**
+     * Fetches the account of tokens validated through a {@link RevocationIndex}, {@code null} for all others.
+     */
+    private final Supplier<IAccount> loader;
     @Getter
     private String prefix;
     @Getter
     private long genTime;
+    /**
+     * Cached signed form, dropped whenever a signed field changes. Like {@link String#hashCode()}, racing threads
+     * at worst compute the same value twice.
+     */
+    private String signed;
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account) {
         this(tokenize, account, null, Tokenize.currentTokenTime());
@@ -63,10 +74,56 @@ public class Token {
     }
 
     Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, @Nullable final String prefix, final long genTime) {
+        this(tokenize, account, prefix, genTime, null);
+    }
+
+    /**
+     * @param signed The signed form of the token, if already known (e.g. the string it was validated from).
+     */
+    Token(@Nonnull final Tokenize tokenize, @Nonnull final IAccount account, @Nullable final String prefix, final long genTime, @Nullable final String signed) {
         this.tokenize = tokenize;
         this.account = account;
+        this.accountId = null;
+        this.loader = null;
         this.prefix = prefix;
         this.genTime = genTime;
+        this.signed = signed;
+    }
+
+    /**
+     * Token validated through a {@link RevocationIndex}, whose account is only fetched when asked for.
+     *
+     * @param loader Fetches the account.
+     */
+    Token(@Nonnull final Tokenize tokenize, @Nonnull final String accountId, @Nonnull final Supplier<IAccount> loader,
+          @Nullable final String prefix, final long genTime, @Nullable final String signed) {
+        this.tokenize = tokenize;
+        this.accountId = accountId;
+        this.loader = loader;
+        this.prefix = prefix;
+        this.genTime = genTime;
+        this.signed = signed;
+    }
+
+    /**
+     * @return The account the token belongs to. Tokens validated through a {@link RevocationIndex} fetch it on the
+     * first call, which may block, and get {@code null} if it no longer exists.
+     */
+    public IAccount getAccount() {
+        IAccount account = this.account;
+        if (account == null && loader != null) {
+            this.account = account = loader.get();
+        }
+        return account;
+    }
+
+    /**
+     * @return The id of the account the token belongs to, without fetching it.
+     */
+    @Nonnull
+    public String getAccountId() {
+        final IAccount account = this.account;
+        return account == null ? accountId : account.getTokenId();
     }
 
     /**
@@ -74,21 +131,21 @@ public class Token {
      */
     @Override
     public String toString() {
-        final StringBuilder token = new StringBuilder();
-        if (this.prefix != null) {
-            token.append(this.prefix).append('.');
+        String signed = this.signed;
+        if (signed == null) {
+            this.signed = signed = sign();
         }
+        return signed;
+    }
 
-        final byte[] rawId = Base64.getEncoder().encode(this.account.getTokenId().getBytes(StandardCharsets.UTF_8)),
-                rawTime = Base64.getEncoder().encode(String.valueOf(this.genTime).getBytes(StandardCharsets.UTF_8));
-
-        token.append(new String(rawId, 0, rawId.length, StandardCharsets.UTF_8));
-        token.append('.');
-        token.append(new String(rawTime, 0, rawTime.length, StandardCharsets.UTF_8));
-
-        final String toSign = token.toString();
-        token.append('.').append(tokenize.computeHmac(toSign));
-        return token.toString();
+    private String sign() {
+        if (this.account == null) {
+            return tokenize.serialize(this.prefix, this.accountId, this.genTime);
+        }
+        if (this.account instanceof ILongAccount) {
+            return tokenize.serialize(this.prefix, ((ILongAccount) this.account).getLongTokenId(), this.genTime);
+        }
+        return tokenize.serialize(this.prefix, this.account.getTokenId(), this.genTime);
     }
 
     /**
@@ -96,6 +153,7 @@ public class Token {
      */
     public void regenerate() {
         this.genTime = Tokenize.currentTokenTime();
+        this.signed = null;
     }
 
     /**
@@ -109,6 +167,7 @@ public class Token {
         }
         this.prefix = prefix;
         this.genTime = Tokenize.currentTokenTime();
+        this.signed = null;
     }
 
     /**
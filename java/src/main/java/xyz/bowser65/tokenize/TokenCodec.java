@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import java.util.Arrays;
+
+/**
+ * Low level encoding helpers used on the token hot paths. Everything here works on caller provided
+ * buffers to avoid intermediate strings and arrays.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class TokenCodec {
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] BASE64_INDEX = new byte[128];
+    private static final byte[] BASE64_URL_INDEX = new byte[128];
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    static {
+        Arrays.fill(BASE64_INDEX, (byte) -1);
+        Arrays.fill(BASE64_URL_INDEX, (byte) -1);
+        for (int i = 0; i < BASE64.length; i++) {
+            BASE64_INDEX[BASE64[i]] = (byte) i;
+            BASE64_URL_INDEX[BASE64_URL[i]] = (byte) i;
+        }
+    }
+
+    private TokenCodec() {
+    }
+
+    /**
+     * @return Per-thread scratch buffers.
+     */
+    @Nonnull
+    static Scratch scratch() {
+        return SCRATCH.get();
+    }
+
+    /**
+     * Feeds the UTF-8 representation of a character range to a Mac, without encoding it to a new array.
+     * Unpaired surrogates are replaced with {@code '?'}, like {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    static void update(@Nonnull final Mac mac, @Nonnull final CharSequence chars, final int start, final int end, @Nonnull final byte[] buf) {
+        final int limit = buf.length - 4;
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            if (n > limit) {
+                mac.update(buf, 0, n);
+                n = 0;
+            }
+
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                buf[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[n++] = (byte) (0xc0 | c >> 6);
+                buf[n++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, chars.charAt(++i));
+                buf[n++] = (byte) (0xf0 | cp >> 18);
+                buf[n++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                buf[n++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                buf[n++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buf[n++] = '?';
+            } else {
+                buf[n++] = (byte) (0xe0 | c >> 12);
+                buf[n++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[n++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        if (n > 0) {
+            mac.update(buf, 0, n);
+        }
+    }
+
+    /**
+     * Appends bytes encoded in standard Base64, without padding.
+     */
+    static void appendBase64(@Nonnull final StringBuilder out, @Nonnull final byte[] src, final int off, final int len) {
+        appendBase64(out, src, off, len, BASE64);
+    }
+
+    /**
+     * Appends bytes encoded in URL-safe Base64, without padding.
+     */
+    static void appendBase64Url(@Nonnull final StringBuilder out, @Nonnull final byte[] src, final int off, final int len) {
+        appendBase64(out, src, off, len, BASE64_URL);
+    }
+
+    private static void appendBase64(@Nonnull final StringBuilder out, @Nonnull final byte[] src, final int off, final int len, @Nonnull final char[] alphabet) {
+        final int end = off + len, full = off + len / 3 * 3;
+        int i = off;
+        while (i < full) {
+            final int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | src[i++] & 0xff;
+            out.append(alphabet[bits >>> 18]).append(alphabet[bits >>> 12 & 0x3f])
+                    .append(alphabet[bits >>> 6 & 0x3f]).append(alphabet[bits & 0x3f]);
+        }
+        if (end - i == 1) {
+            final int bits = (src[i] & 0xff) << 16;
+            out.append(alphabet[bits >>> 18]).append(alphabet[bits >>> 12 & 0x3f]);
+        } else if (end - i == 2) {
+            final int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            out.append(alphabet[bits >>> 18]).append(alphabet[bits >>> 12 & 0x3f]).append(alphabet[bits >>> 6 & 0x3f]);
+        }
+    }
+
+    /**
+     * Decodes a range of standard Base64 characters. Padding is optional, but when present it must be valid.
+     * Encodings leaving non-zero bits behind are rejected, so every byte sequence has a single accepted form.
+     *
+     * @return The amount of bytes written, or {@code -1} if the range isn't valid Base64 or doesn't fit.
+     */
+    static int decodeBase64(@Nonnull final TokenInput src, final int start, final int end, @Nonnull final byte[] out) {
+        return decodeBase64(src, start, end, out, BASE64_INDEX);
+    }
+
+    /**
+     * Same as {@link #decodeBase64(TokenInput, int, int, byte[])}, for URL-safe Base64.
+     */
+    static int decodeBase64Url(@Nonnull final TokenInput src, final int start, final int end, @Nonnull final byte[] out) {
+        return decodeBase64(src, start, end, out, BASE64_URL_INDEX);
+    }
+
+    private static int decodeBase64(@Nonnull final TokenInput src, final int start, int end, @Nonnull final byte[] out, @Nonnull final byte[] index) {
+        if (end - start >= 2 && src.at(end - 1) == '=') {
+            if ((end - start & 3) != 0) return -1;
+            end -= src.at(end - 2) == '=' ? 2 : 1;
+        }
+
+        final int length = end - start, remain = length & 3;
+        if (remain == 1 || decodedLength(length) > out.length) return -1;
+
+        int n = 0, bits = 0;
+        for (int i = start; i < end; i++) {
+            final int c = src.at(i);
+            final int value = c < 128 ? index[c] : -1;
+            if (value < 0) return -1;
+            bits = bits << 6 | value;
+            if ((i - start & 3) == 3) {
+                out[n++] = (byte) (bits >> 16);
+                out[n++] = (byte) (bits >> 8);
+                out[n++] = (byte) bits;
+                bits = 0;
+            }
+        }
+
+        if (remain == 2) {
+            if ((bits & 0xf) != 0) return -1;
+            out[n++] = (byte) (bits >> 4);
+        } else if (remain == 3) {
+            if ((bits & 0x3) != 0) return -1;
+            out[n++] = (byte) (bits >> 10);
+            out[n++] = (byte) (bits >> 2);
+        }
+        return n;
+    }
+
+    /**
+     * @return Maximum amount of bytes the given amount of unpadded Base64 characters decodes to.
+     */
+    static int decodedLength(final int chars) {
+        return chars / 4 * 3 + Math.max(0, (chars & 3) - 1);
+    }
+
+    /**
+     * Parses ASCII decimal digits.
+     *
+     * @return The parsed number, or {@code -1} if the bytes aren't a valid positive long.
+     */
+    static long parseLong(@Nonnull final byte[] digits, final int off, final int len) {
+        if (len == 0) return -1;
+        long value = 0;
+        for (int i = off; i < off + len; i++) {
+            final int digit = digits[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses ASCII decimal digits written the way {@link Long#toString(long)} writes them, so that a number
+     * only ever matches a single id.
+     *
+     * @return The parsed number, or {@code -1} if the bytes aren't a canonical positive long.
+     */
+    static long parseCanonicalLong(@Nonnull final byte[] digits, final int off, final int len) {
+        return len > 1 && digits[off] == '0' ? -1 : parseLong(digits, off, len);
+    }
+
+    /**
+     * @return The parsed number, or {@code -1} if the characters aren't a canonical positive long.
+     * @see #parseCanonicalLong(byte[], int, int)
+     */
+    static long parseCanonicalLong(@Nonnull final CharSequence digits) {
+        final int len = digits.length();
+        if (len == 0 || len > 1 && digits.charAt(0) == '0') return -1;
+        long value = 0;
+        for (int i = 0; i < len; i++) {
+            final int digit = digits.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Writes the ASCII decimal digits of a non-negative number.
+     *
+     * @return The offset right after the last digit.
+     */
+    static int putLong(@Nonnull final byte[] buf, final int off, long value) {
+        final int end = off + longSize(value);
+        for (int i = end - 1; i >= off; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * @return Amount of decimal digits of a non-negative number.
+     */
+    static int longSize(long value) {
+        int size = 1;
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return Amount of bytes the unsigned LEB128 encoding of a non-negative number takes.
+     */
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    /**
+     * Writes a non-negative number as an unsigned LEB128 varint.
+     *
+     * @return The index after the last written byte.
+     */
+    static int putVarLong(@Nonnull final byte[] buf, int off, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buf[off++] = (byte) (value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        buf[off++] = (byte) value;
+        return off;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint. Only the shortest encoding of a number is accepted, so the amount of bytes
+     * read is always {@link #varLongSize(long)} of the result.
+     *
+     * @return The number, or {@code -1} if the bytes aren't a valid varint.
+     */
+    static long getVarLong(@Nonnull final byte[] buf, final int off, final int end) {
+        long value = 0;
+        for (int i = off, shift = 0; i < end && shift <= 56; i++, shift += 7) {
+            final int b = buf[i] & 0xff;
+            if (shift == 56 && b > 0x7f) return -1;
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return b == 0 && i > off ? -1 : value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares two byte ranges in constant time.
+     */
+    static boolean constantTimeEquals(@Nonnull final byte[] a, @Nonnull final byte[] b, final int len) {
+        int diff = 0;
+        for (int i = 0; i < len; i++) {
+            diff |= a[i] ^ b[i];
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Reusable buffers. Only ever used by the thread owning them, and never across a call boundary.
+     */
+    static final class Scratch {
+        final byte[] chunk = new byte[256];
+        final byte[] digest = new byte[64];
+        final byte[] signature = new byte[64];
+        final byte[] digits = new byte[20];
+    }
+}
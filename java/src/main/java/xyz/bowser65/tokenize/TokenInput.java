@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view over a raw token, letting the parser work on characters or UTF-8 bytes without copying them
+ * to a String first.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+abstract class TokenInput {
+    /**
+     * @return Amount of units (characters or bytes) in the token.
+     */
+    abstract int length();
+
+    /**
+     * @return The unit at the given index. Only meaningful for ASCII, which is all the parser needs to look at.
+     */
+    abstract int at(int index);
+
+    /**
+     * Feeds the UTF-8 representation of a range to a Mac.
+     */
+    abstract void update(@Nonnull Mac mac, int start, int end, @Nonnull byte[] buf);
+
+    /**
+     * @return A range of the token as a String.
+     */
+    @Nonnull
+    abstract String string(int start, int end);
+
+    /**
+     * @return The whole token as a String if it already is one, so it can be reused as is.
+     */
+    @Nullable
+    String source() {
+        return null;
+    }
+
+    @Nonnull
+    static TokenInput of(@Nonnull final CharSequence chars) {
+        return new Chars(chars);
+    }
+
+    @Nonnull
+    static TokenInput of(@Nonnull final byte[] bytes, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + bytes.length);
+        }
+        return new Bytes(bytes, offset, length);
+    }
+
+    @Nonnull
+    static TokenInput of(@Nonnull final ByteBuffer buffer) {
+        return new Buffer(buffer);
+    }
+
+    private static final class Chars extends TokenInput {
+        private final CharSequence chars;
+
+        Chars(@Nonnull final CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        int length() {
+            return chars.length();
+        }
+
+        @Override
+        int at(final int index) {
+            return chars.charAt(index);
+        }
+
+        @Override
+        void update(@Nonnull final Mac mac, final int start, final int end, @Nonnull final byte[] buf) {
+            TokenCodec.update(mac, chars, start, end, buf);
+        }
+
+        @Nonnull
+        @Override
+        String string(final int start, final int end) {
+            return chars.subSequence(start, end).toString();
+        }
+
+        @Nullable
+        @Override
+        String source() {
+            return chars instanceof String ? (String) chars : null;
+        }
+    }
+
+    private static final class Bytes extends TokenInput {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Bytes(@Nonnull final byte[] bytes, final int offset, final int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int at(final int index) {
+            return bytes[offset + index] & 0xff;
+        }
+
+        @Override
+        void update(@Nonnull final Mac mac, final int start, final int end, @Nonnull final byte[] buf) {
+            mac.update(bytes, offset + start, end - start);
+        }
+
+        @Nonnull
+        @Override
+        String string(final int start, final int end) {
+            return new String(bytes, offset + start, end - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Buffer extends TokenInput {
+        private final ByteBuffer buffer;
+        private final int position;
+        private final int length;
+
+        Buffer(@Nonnull final ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.position = buffer.position();
+            this.length = buffer.remaining();
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int at(final int index) {
+            return buffer.get(position + index) & 0xff;
+        }
+
+        @Override
+        void update(@Nonnull final Mac mac, final int start, final int end, @Nonnull final byte[] buf) {
+            // A duplicate keeps the caller's position untouched, and lets the provider read direct memory itself.
+            final ByteBuffer range = buffer.duplicate();
+            range.limit(position + end);
+            range.position(position + start);
+            mac.update(range);
+        }
+
+        @Nonnull
+        @Override
+        String string(final int start, final int end) {
+            final byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(position + start + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Builder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes the signed tokens of a lot of accounts at once, for mass issuance (migrations, magic link campaigns...).
+ * Tokens are written in iteration order, each one followed by the separator, without any {@link Token} being
+ * created. Accounts are read in chunks, each chunk being signed in parallel on the executor.
+ * <p>
+ * To write tokens from a {@link java.util.Spliterator}, wrap it with {@link java.util.Spliterators#iterator}.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class TokenWriter {
+    /**
+     * Minimum amount of tokens signed by a single task.
+     */
+    private static final int MIN_SLICE_SIZE = 256;
+
+    private final Tokenize tokenize;
+    @Nullable
+    private final String prefix;
+    private final long genTime;
+    private final String separator;
+    private final Executor executor;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * @param tokenize    The Tokenize instance tokens are signed with.
+     * @param prefix      The prefix of all tokens, if any. Cannot contain dots.
+     * @param genTime     The generation time of all tokens. Defaults to the time each write starts at.
+     * @param separator   Written after each token. Defaults to a line feed.
+     * @param executor    The executor tokens are signed on. Defaults to the common fork-join pool.
+     * @param parallelism Maximum amount of tasks signing a chunk. Defaults to the amount of processors.
+     * @param chunkSize   Amount of accounts read before signing them. Defaults to 8192.
+     */
+    @Builder
+    private TokenWriter(@Nonnull final Tokenize tokenize, @Nullable final String prefix, final long genTime, @Nullable final String separator,
+                        @Nullable final Executor executor, final int parallelism, final int chunkSize) {
+        if (prefix != null && prefix.contains(".")) {
+            throw new IllegalArgumentException("Prefix cannot contain dots.");
+        }
+        if (genTime < 0 || parallelism < 0 || chunkSize < 0) {
+            throw new IllegalArgumentException("Generation time, parallelism and chunk size cannot be negative.");
+        }
+        this.tokenize = tokenize;
+        this.prefix = prefix;
+        this.genTime = genTime;
+        this.separator = separator == null ? "\n" : separator;
+        this.executor = executor == null ? ForkJoinPool.commonPool() : executor;
+        this.parallelism = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        this.chunkSize = chunkSize == 0 ? 8192 : chunkSize;
+    }
+
+    /**
+     * @param accounts The accounts to write tokens for.
+     * @param out      Where tokens are written to.
+     * @return The amount of tokens written.
+     * @throws IOException If writing fails.
+     */
+    public long write(@Nonnull final Iterator<? extends IAccount> accounts, @Nonnull final Appendable out) throws IOException {
+        return write(accounts, (Sink) out::append);
+    }
+
+    /**
+     * Writes tokens encoded in UTF-8.
+     *
+     * @param accounts The accounts to write tokens for.
+     * @param out      Where tokens are written to.
+     * @return The amount of tokens written.
+     * @throws IOException If writing fails.
+     */
+    public long write(@Nonnull final Iterator<? extends IAccount> accounts, @Nonnull final WritableByteChannel out) throws IOException {
+        final CharsetEncoder encoder = encoder();
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        return write(accounts, chars -> {
+            final CharBuffer in = CharBuffer.wrap(chars);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(in, buffer, true);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            } while (result.isOverflow());
+        });
+    }
+
+    /**
+     * Writes tokens encoded in UTF-8, starting at the position of the buffer.
+     *
+     * @param accounts The accounts to write tokens for.
+     * @param out      Where tokens are written to.
+     * @return The amount of tokens written.
+     * @throws BufferOverflowException If the buffer is too small. Tokens already written are left in it.
+     */
+    public long write(@Nonnull final Iterator<? extends IAccount> accounts, @Nonnull final ByteBuffer out) {
+        final CharsetEncoder encoder = encoder();
+        try {
+            return write(accounts, chars -> {
+                encoder.reset();
+                if (encoder.encode(CharBuffer.wrap(chars), out, true).isOverflow()) {
+                    throw new BufferOverflowException();
+                }
+            });
+        } catch (IOException e) {
+            // Encoding into a buffer never does I/O.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long write(@Nonnull final Iterator<? extends IAccount> accounts, @Nonnull final Sink sink) throws IOException {
+        final long genTime = this.genTime == 0 ? Tokenize.currentTokenTime() : this.genTime;
+        final IAccount[] chunk = new IAccount[chunkSize];
+        // Builders are reused from one chunk to the next, each slice of a chunk getting its own.
+        final StringBuilder[] slices = new StringBuilder[parallelism];
+        final CompletableFuture<?>[] tasks = new CompletableFuture<?>[parallelism];
+        long written = 0;
+
+        while (accounts.hasNext()) {
+            int count = 0;
+            while (count < chunk.length && accounts.hasNext()) {
+                chunk[count++] = accounts.next();
+            }
+
+            final int sliceCount = Math.max(1, Math.min(parallelism, count / MIN_SLICE_SIZE));
+            final int sliceSize = (count + sliceCount - 1) / sliceCount;
+            for (int i = 0; i < sliceCount; i++) {
+                if (slices[i] == null) {
+                    slices[i] = new StringBuilder();
+                }
+                final StringBuilder slice = slices[i];
+                final int from = i * sliceSize, to = Math.min(count, from + sliceSize);
+                slice.setLength(0);
+                if (sliceCount == 1) {
+                    sign(chunk, from, to, slice, genTime);
+                } else {
+                    tasks[i] = CompletableFuture.runAsync(() -> sign(chunk, from, to, slice, genTime), executor);
+                }
+            }
+            if (sliceCount > 1) {
+                Futures.join(CompletableFuture.allOf(Arrays.copyOf(tasks, sliceCount)));
+            }
+
+            for (int i = 0; i < sliceCount; i++) {
+                sink.write(slices[i]);
+            }
+            Arrays.fill(chunk, 0, count, null);
+            written += count;
+        }
+        return written;
+    }
+
+    private void sign(@Nonnull final IAccount[] chunk, final int from, final int to, @Nonnull final StringBuilder out, final long genTime) {
+        for (int i = from; i < to; i++) {
+            tokenize.appendToken(out, prefix, chunk[i], genTime);
+            out.append(separator);
+        }
+    }
+
+    @Nonnull
+    private static CharsetEncoder encoder() {
+        // Like String#getBytes, which the prefix would otherwise go through.
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private interface Sink {
+        void write(@Nonnull CharSequence chars) throws IOException;
+    }
+}
@@ -27,17 +27,35 @@
 
 package xyz.bowser65.tokenize;
 
+import lombok.Builder;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
-import java.util.Base64;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Tokenize main class
@@ -48,22 +66,177 @@ import java.util.concurrent.CompletionStage;
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class Tokenize {
     /**
-     * Tokenize Token Format version.
+     * Tokenize Token Format version generated by default.
      */
     public static final int VERSION = 1;
 
+    /**
+     * Compact Tokenize Token Format: {@code [prefix.]payload.signature}, where the payload is a single URL-safe
+     * Base64 segment holding a version byte, the id of the signing key, the varint length of the account id, the
+     * account id and the varint generation time. The signature may be truncated. Both versions are always accepted
+     * when validating.
+     */
+    public static final int VERSION_2 = 2;
+
+    /**
+     * Shortest signature allowed for version 2 tokens, in bytes.
+     */
+    public static final int MIN_MAC_LENGTH = 16;
+
     /**
      * First millisecond of 2019, used to get shorter tokens.
      */
     public static final long TOKENIZE_EPOCH = 1546300800000L;
 
     /**
-     * Secret used to sign tokens.
+     * Algorithm used to sign tokens.
+     */
+    public static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Minimum amount of tokens checked by a single task when validating in bulk.
+     */
+    private static final int BULK_CHUNK_SIZE = 256;
+
+    /**
+     * Bytes every signature starts with, so signing never needs to concatenate it with the token.
+     */
+    private static final byte[] SIGNATURE_PREFIX_V1 = "TTF.1.".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SIGNATURE_PREFIX_V2 = "TTF.2.".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Keys tokens are signed and validated with.
+     */
+    private final Keyring keyring;
+    private final int version;
+    /**
+     * Length of generated version 2 signatures, in bytes.
+     */
+    private final int macLength;
+    /**
+     * Shortest version 2 signature accepted, in bytes.
+     */
+    private final int minMacLength;
+    /**
+     * Revocation timestamps consulted before fetching accounts.
+     */
+    @Nullable
+    private final RevocationIndex revocationIndex;
+    /**
+     * Ids of existing accounts, consulted before fetching accounts.
+     */
+    @Nullable
+    private volatile AccountFilter accountFilter;
+    private final TokenizeMetrics metrics;
+    /**
+     * Tokens whose signature was recently checked.
      */
-    private final byte[] secret;
+    @Nullable
+    private final VerifiedTokenCache verifiedTokens;
 
     public Tokenize(final byte[] secret) {
-        this.secret = secret;
+        this(secret, null, null, 0, 0, 0, null, null, null, 0, null);
+    }
+
+    /**
+     * @param hmacEngine The engine providing keyed Macs. Lets you pick how Macs are kept around, for example
+     *                   {@link HmacEngine#pooled(String, byte[], int)} for virtual threads.
+     */
+    public Tokenize(@Nonnull final HmacEngine hmacEngine) {
+        this(null, hmacEngine, null, 0, 0, 0, null, null, null, 0, null);
+    }
+
+    /**
+     * @param secret     The secret used to sign tokens. Exactly one of the secret, the engine and the keyring must be set.
+     * @param hmacEngine The engine providing keyed Macs.
+     * @param keyring    The keys used to sign tokens, which may be changed at runtime to rotate secrets. It must
+     *                   hold key 0 to generate version 1 tokens.
+     * @param version    The format version of generated tokens, {@link #VERSION} or {@link #VERSION_2}.
+     *                   Defaults to {@link #VERSION}.
+     * @param macLength  Length of generated version 2 signatures in bytes, at least {@link #MIN_MAC_LENGTH}.
+     *                   Defaults to the full Mac length. Tokens carry the length of their signature.
+     * @param minMacLength Shortest version 2 signature accepted, in bytes. Defaults to {@code macLength}. Lower it,
+     *                     down to {@link #MIN_MAC_LENGTH}, to accept tokens of nodes using shorter signatures while
+     *                     migrating between lengths.
+     * @param revocationIndex Index checked before fetching accounts. Tokens of accounts it knows are validated
+     *                        against it without fetching, and their {@link Token#getAccount()} fetches the account
+     *                        on first call. Others fall back to the fetcher. Keeping it up to date is up to you.
+     * @param accountFilter   Filter of existing account ids. Accounts it doesn't contain are considered unknown
+     *                        without being fetched.
+     * @param metrics         Listener notified of validations and their timings. Defaults to none.
+     * @param verifiedCacheSize Maximum amount of tokens remembered as correctly signed, so validating the same
+     *                          token again skips the signature check. Only tokens given as Strings are cached.
+     *                          Disabled if left unset.
+     * @param verifiedCacheTtl  How long a token is remembered as correctly signed. Defaults to 10 seconds.
+     */
+    @Builder
+    private Tokenize(@Nullable final byte[] secret, @Nullable final HmacEngine hmacEngine, @Nullable final Keyring keyring,
+                     final int version, final int macLength, final int minMacLength, @Nullable final RevocationIndex revocationIndex,
+                     @Nullable final AccountFilter accountFilter, @Nullable final TokenizeMetrics metrics,
+                     final long verifiedCacheSize, @Nullable final Duration verifiedCacheTtl) {
+        if ((secret != null ? 1 : 0) + (hmacEngine != null ? 1 : 0) + (keyring != null ? 1 : 0) != 1) {
+            throw new IllegalArgumentException("Exactly one of secret, hmacEngine and keyring must be set.");
+        }
+        this.keyring = keyring != null ? keyring : secret != null ? Keyring.of(secret) : Keyring.of(hmacEngine);
+        this.version = version == 0 ? VERSION : version;
+        if (this.version != VERSION && this.version != VERSION_2) {
+            throw new IllegalArgumentException("Unsupported token format version " + version);
+        }
+        final HmacEngine engine = this.keyring.get(this.version == VERSION ? 0 : this.keyring.getPrimary());
+        if (engine == null) {
+            throw new IllegalArgumentException(this.version == VERSION ? "Version 1 tokens require key 0." : "The keyring is empty.");
+        }
+
+        final Mac mac = engine.acquire();
+        final int fullLength = mac.getMacLength();
+        engine.release(mac);
+        if (macLength != 0 && (this.version != VERSION_2 || macLength < MIN_MAC_LENGTH || macLength > fullLength)) {
+            throw new IllegalArgumentException("MAC length must be between " + MIN_MAC_LENGTH + " and " + fullLength + " bytes, and version 2 tokens must be used.");
+        }
+        this.macLength = macLength == 0 ? fullLength : macLength;
+        if (minMacLength != 0 && (minMacLength < MIN_MAC_LENGTH || minMacLength > this.macLength)) {
+            throw new IllegalArgumentException("Minimum MAC length must be between " + MIN_MAC_LENGTH + " and the MAC length.");
+        }
+        this.minMacLength = minMacLength == 0 ? this.macLength : minMacLength;
+        this.revocationIndex = revocationIndex;
+        this.accountFilter = accountFilter;
+        this.metrics = metrics == null ? TokenizeMetrics.NOOP : metrics;
+        if (verifiedCacheSize < 0) {
+            throw new IllegalArgumentException("Verified token cache size cannot be negative.");
+        }
+        this.verifiedTokens = verifiedCacheSize == 0 ? null : new VerifiedTokenCache(verifiedCacheSize, verifiedCacheTtl);
+    }
+
+    /**
+     * @return The keys tokens are signed and validated with.
+     */
+    @Nonnull
+    public Keyring getKeyring() {
+        return keyring;
+    }
+
+    /**
+     * Replaces the filter of existing account ids, for example with a freshly rebuilt one.
+     *
+     * @param accountFilter The new filter, or {@code null} to always fetch accounts.
+     */
+    public void setAccountFilter(@Nullable final AccountFilter accountFilter) {
+        this.accountFilter = accountFilter;
+    }
+
+    /**
+     * Forgets all tokens remembered as correctly signed. Changes to the keyring already do so.
+     */
+    public void clearVerifiedTokens() {
+        if (verifiedTokens != null) {
+            verifiedTokens.clear();
+        }
+    }
+
+    /**
+     * @return The format version of generated tokens.
+     */
+    public int getVersion() {
+        return version;
     }
 
     @Nonnull
@@ -76,6 +249,48 @@ public class Tokenize {
         return new Token(this, account, prefix, currentTokenTime());
     }
 
+    /**
+     * Only checks the signature of a token, without fetching the account. The account is fetched, and the token
+     * checked against {@link IAccount#tokensValidSince()}, only if asked for through the returned handle.
+     *
+     * @param token The token to verify.
+     * @return The verified token.
+     * @throws SignatureException If the token signature is invalid.
+     */
+    @Nonnull
+    public VerifiedToken verifyToken(@Nonnull final CharSequence token) throws SignatureException {
+        return verifyToken(TokenInput.of(token));
+    }
+
+    /**
+     * Only checks the signature of a token stored as UTF-8 bytes, without fetching the account.
+     *
+     * @param token  Array holding the token.
+     * @param offset Offset of the token in the array.
+     * @param length Length of the token.
+     * @return The verified token.
+     * @throws SignatureException If the token signature is invalid.
+     * @see #verifyToken(CharSequence)
+     */
+    @Nonnull
+    public VerifiedToken verifyToken(@Nonnull final byte[] token, final int offset, final int length) throws SignatureException {
+        return verifyToken(TokenInput.of(token, offset, length));
+    }
+
+    /**
+     * Only checks the signature of a token stored as UTF-8 bytes, without fetching the account.
+     * The token is read between the position and the limit of the buffer, which are left untouched.
+     *
+     * @param token Buffer holding the token.
+     * @return The verified token.
+     * @throws SignatureException If the token signature is invalid.
+     * @see #verifyToken(CharSequence)
+     */
+    @Nonnull
+    public VerifiedToken verifyToken(@Nonnull final ByteBuffer token) throws SignatureException {
+        return verifyToken(TokenInput.of(token));
+    }
+
     /**
      * Validates a token synchronously.
      *
@@ -85,14 +300,45 @@ public class Tokenize {
      * @throws SignatureException If the token signature is invalid.
      */
     @Nullable
+    public Token validateToken(@Nonnull final CharSequence token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token), accountFetcher);
+    }
+
+    /**
+     * Same as {@link #validateToken(CharSequence, AccountFetcher)}, kept for callers compiled against it.
+     */
+    @Nullable
     public Token validateToken(@Nonnull final String token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
-        final String[] parts = parseToken(token);
-        final long tokenTime = Long.parseLong(parts[2]);
-        final IAccount account = accountFetcher.fetchAccount(parts[1]);
-        if (account != null && tokenTime > account.tokensValidSince()) {
-            return new Token(this, account, parts[0], tokenTime);
-        }
-        return null;
+        return validateToken(TokenInput.of(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes synchronously, without decoding it to a String first.
+     *
+     * @param token          Array holding the token.
+     * @param offset         Offset of the token in the array.
+     * @param length         Length of the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final byte[] token, final int offset, final int length, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token, offset, length), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes synchronously, without decoding it to a String first.
+     * The token is read between the position and the limit of the buffer, which are left untouched.
+     *
+     * @param token          Buffer holding the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     * @throws SignatureException If the token signature is invalid.
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final ByteBuffer token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token), accountFetcher);
     }
 
     /**
@@ -100,50 +346,727 @@ public class Tokenize {
      *
      * @param token          The token to validate.
      * @param accountFetcher The account fetcher used to retrieve the account.
-     * @return A {@link CompletionStage}.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked. It completes exceptionally if the fetcher fails.
      * @throws SignatureException If the token signature is invalid.
+     * @see #validateTokenAsync(CharSequence, AsyncAccountFetcher, Executor, Duration)
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final CharSequence token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token), accountFetcher);
+    }
+
+    /**
+     * Same as {@link #validateToken(CharSequence, AsyncAccountFetcher)}, kept for callers compiled against it.
      */
     @Nullable
     public CompletionStage<Token> validateToken(@Nonnull final String token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
-        final CompletableFuture<Token> future = new CompletableFuture<>();
-        final String[] parts = parseToken(token);
-        final long tokenTime = Long.parseLong(parts[2]);
-        accountFetcher.fetchAccount(parts[1]).thenAccept(account -> {
-            if (account != null && tokenTime > account.tokensValidSince()) {
-                future.complete(new Token(this, account, parts[0], tokenTime));
+        return validateToken(TokenInput.of(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes asynchronously, without decoding it to a String first.
+     *
+     * @param token          Array holding the token.
+     * @param offset         Offset of the token in the array.
+     * @param length         Length of the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked. It completes exceptionally if the fetcher fails.
+     * @throws SignatureException If the token signature is invalid.
+     * @see #validateTokenAsync(CharSequence, AsyncAccountFetcher, Executor, Duration)
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final byte[] token, final int offset, final int length, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token, offset, length), accountFetcher);
+    }
+
+    /**
+     * Validates a token stored as UTF-8 bytes asynchronously, without decoding it to a String first.
+     * The token is read between the position and the limit of the buffer, which are left untouched.
+     *
+     * @param token          Buffer holding the token.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked. It completes exceptionally if the fetcher fails.
+     * @throws SignatureException If the token signature is invalid.
+     * @see #validateTokenAsync(CharSequence, AsyncAccountFetcher, Executor, Duration)
+     */
+    @Nullable
+    public CompletionStage<Token> validateToken(@Nonnull final ByteBuffer token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        return validateToken(TokenInput.of(token), accountFetcher);
+    }
+
+    /**
+     * Validates a token synchronously, for accounts identified by numbers. Ids are parsed straight from the
+     * token, without building a String.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     * Tokens whose id isn't a number never have an account.
+     * @throws SignatureException If the token signature is invalid.
+     */
+    @Nullable
+    public Token validateToken(@Nonnull final CharSequence token, @Nonnull LongAccountFetcher accountFetcher) throws SignatureException {
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final ParsedToken parsed = parseToken(TokenInput.of(token), start, true);
+        final IAccount account = lookupAccount(parsed, accountFetcher);
+        final Token result = account != null && parsed.genTime > account.tokensValidSince()
+                ? newToken(parsed, account) : null;
+        recordValidation(account, result, start);
+        return result;
+    }
+
+    /**
+     * Validates a token asynchronously, for accounts identified by numbers. Ids are parsed straight from the
+     * token, without building a String.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked. It completes exceptionally if the fetcher fails.
+     * @throws SignatureException If the token signature is invalid.
+     */
+    @Nonnull
+    public CompletionStage<Token> validateToken(@Nonnull final CharSequence token, @Nonnull AsyncLongAccountFetcher accountFetcher) throws SignatureException {
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final ParsedToken parsed = parseToken(TokenInput.of(token), start, true);
+        return toToken(parsed, lookupAccount(parsed, accountFetcher), start);
+    }
+
+    /**
+     * Validates a token asynchronously, reporting every failure through the returned stage.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked.
+     * @see #validateTokenAsync(CharSequence, AsyncAccountFetcher, Executor, Duration)
+     */
+    @Nonnull
+    public CompletionStage<Token> validateTokenAsync(@Nonnull final CharSequence token, @Nonnull final AsyncAccountFetcher accountFetcher) {
+        return validateTokenAsync(token, accountFetcher, null, null);
+    }
+
+    /**
+     * Validates a token asynchronously, reporting every failure through the returned stage.
+     * <p>
+     * The stage completes exceptionally with a {@link SignatureException} if the signature is invalid, an
+     * {@link IllegalArgumentException} if the token is malformed, a {@link TimeoutException} if the timeout
+     * elapses first, or whatever the fetcher failed with. Cancelling it, or it timing out, cancels the stage
+     * returned by the fetcher.
+     *
+     * @param token          The token to validate. It must not change until the stage completes.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @param executor       The executor the signature is checked on, or {@code null} for the calling thread. A
+     *                       timeout completes the stage on it, or on the common fork-join pool if {@code null}.
+     * @param timeout        How long the whole validation may take, or {@code null} to wait as long as needed.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked.
+     */
+    @Nonnull
+    public CompletionStage<Token> validateTokenAsync(@Nonnull final CharSequence token, @Nonnull final AsyncAccountFetcher accountFetcher,
+                                                     @Nullable final Executor executor, @Nullable final Duration timeout) {
+        final CompletableFuture<Token> result = new CompletableFuture<>();
+        if (timeout != null) {
+            // Completing runs the caller's dependent stages and cancels the fetch, which mustn't happen on the scheduler.
+            final ScheduledFuture<?> timer = Schedulers.shared().schedule(() -> Schedulers.handOff(executor == null ? ForkJoinPool.commonPool() : executor,
+                    () -> result.completeExceptionally(new TimeoutException("Token validation timed out after " + timeout))),
+                    timeout.toNanos(), TimeUnit.NANOSECONDS);
+            result.whenComplete((t, e) -> timer.cancel(false));
+        }
+
+        final TokenInput input = TokenInput.of(token);
+        final Runnable task = () -> {
+            if (result.isDone()) return;
+            try {
+                final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+                final ParsedToken parsed = parseToken(input, start);
+                final CompletionStage<IAccount> fetched = lookupAccount(parsed, accountFetcher);
+                result.whenComplete((t, e) -> {
+                    if (e != null && fetched instanceof Future) ((Future<?>) fetched).cancel(false);
+                });
+                toToken(parsed, fetched, start).whenComplete((t, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(Futures.unwrap(e));
+                    } else {
+                        result.complete(t);
+                    }
+                });
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
             }
-            future.complete(null);
+        };
+
+        if (executor == null) {
+            task.run();
+        } else {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Validates a lot of tokens at once. Signatures are checked in parallel on the common fork-join pool, and
+     * each distinct account is only fetched once.
+     *
+     * @param tokens         The tokens to validate.
+     * @param accountFetcher The account fetcher used to retrieve the accounts.
+     * @return One result per token, in iteration order.
+     */
+    @Nonnull
+    public List<ValidationResult> validateTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final AccountFetcher accountFetcher) {
+        return validateTokens(tokens, accountFetcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates a lot of tokens at once. Signatures are checked in parallel on the given executor, and
+     * each distinct account is only fetched once.
+     *
+     * @param tokens         The tokens to validate.
+     * @param accountFetcher The account fetcher used to retrieve the accounts.
+     * @param executor       The executor signatures are checked on.
+     * @return One result per token, in iteration order.
+     */
+    @Nonnull
+    public List<ValidationResult> validateTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final AccountFetcher accountFetcher,
+                                                 @Nonnull final Executor executor) {
+        final ParsedToken[] parsed = Futures.join(verifyTokens(tokens, executor));
+        final IAccount[] indexed = indexedAccounts(parsed, id -> fetchAccount(id, accountFetcher));
+        final Map<String, IAccount> accounts = new HashMap<>();
+        for (int i = 0; i < parsed.length; i++) {
+            final ParsedToken token = parsed[i];
+            if (token.isVerified() && indexed[i] == null && !accounts.containsKey(token.id())) {
+                accounts.put(token.id(), fetchAccount(token.id(), accountFetcher));
+            }
+        }
+        return toResults(parsed, indexed, accounts);
+    }
+
+    /**
+     * Validates a lot of tokens at once. Signatures are checked in parallel on the common fork-join pool, then
+     * all distinct accounts are fetched in a single bulk call.
+     *
+     * @param tokens         The tokens to validate.
+     * @param accountFetcher The bulk account fetcher used to retrieve the accounts.
+     * @return A {@link CompletionStage} completed with one result per token, in iteration order.
+     */
+    @Nonnull
+    public CompletionStage<List<ValidationResult>> validateTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final BulkAccountFetcher accountFetcher) {
+        return validateTokens(tokens, accountFetcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates a lot of tokens at once. Signatures are checked in parallel on the given executor, then
+     * all distinct accounts are fetched in a single bulk call.
+     *
+     * @param tokens         The tokens to validate.
+     * @param accountFetcher The bulk account fetcher used to retrieve the accounts.
+     * @param executor       The executor signatures are checked on.
+     * @return A {@link CompletionStage} completed with one result per token, in iteration order.
+     */
+    @Nonnull
+    public CompletionStage<List<ValidationResult>> validateTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final BulkAccountFetcher accountFetcher,
+                                                                  @Nonnull final Executor executor) {
+        return verifyTokens(tokens, executor).thenCompose(parsed -> {
+            final IAccount[] indexed = indexedAccounts(parsed, id -> {
+                final Map<String, IAccount> accounts = Futures.join(accountFetcher.fetchAccounts(Collections.singleton(id)).toCompletableFuture());
+                return accounts == null ? null : accounts.get(id);
+            });
+            final Set<String> ids = new LinkedHashSet<>();
+            final Map<String, IAccount> known = new HashMap<>();
+            for (int i = 0; i < parsed.length; i++) {
+                final ParsedToken token = parsed[i];
+                if (!token.isVerified() || indexed[i] != null || known.containsKey(token.id())) continue;
+                if (isUnknown(token.id())) {
+                    known.put(token.id(), null);
+                } else {
+                    ids.add(token.id());
+                }
+            }
+            if (ids.isEmpty()) {
+                return CompletableFuture.completedFuture(toResults(parsed, indexed, known));
+            }
+            final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+            return accountFetcher.fetchAccounts(ids).thenApply(accounts -> {
+                if (metrics != TokenizeMetrics.NOOP) metrics.onFetch(System.nanoTime() - start);
+                if (accounts != null) known.putAll(accounts);
+                return toResults(parsed, indexed, known);
+            });
         });
-        return future;
     }
 
-    private String[] parseToken(@Nonnull final String token) throws SignatureException {
-        final String[] parts = token.split("\\.");
-        String[] parsed = new String[4];
-        if (parts.length != 3 && parts.length != 4) {
-            throw new IllegalArgumentException("Invalid token: expected 3 or 4 parts, got " + parts.length);
+    /**
+     * Checks the signatures of all tokens, split in chunks ran on the executor.
+     */
+    @Nonnull
+    private CompletableFuture<ParsedToken[]> verifyTokens(@Nonnull final Collection<? extends CharSequence> tokens, @Nonnull final Executor executor) {
+        final CharSequence[] input = tokens.toArray(new CharSequence[0]);
+        final ParsedToken[] parsed = new ParsedToken[input.length];
+        final int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+        final int chunk = Math.max(BULK_CHUNK_SIZE, input.length / (parallelism * 4) + 1);
+        final CompletableFuture<?>[] tasks = new CompletableFuture[(input.length + chunk - 1) / chunk];
+        for (int i = 0; i < tasks.length; i++) {
+            final int start = i * chunk, end = Math.min(input.length, start + chunk);
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                for (int j = start; j < end; j++) {
+                    parsed[j] = parseLeniently(input[j]);
+                }
+            }, executor);
         }
+        return CompletableFuture.allOf(tasks).thenApply(v -> parsed);
+    }
 
-        int index = 0;
-        boolean signatureValid;
-        if (parts.length == 4) {
-            signatureValid = computeHmac(parts[0] + '.' + parts[1] + '.' + parts[2]).equals(parts[3]);
-            parsed[0] = parts[0];
-            index++;
-        } else {
-            signatureValid = computeHmac(parts[0] + '.' + parts[1]).equals(parts[2]);
-            parsed[0] = null;
+    /**
+     * Parses and checks the signature of a token without throwing. Also used by the benchmarks.
+     */
+    @Nonnull
+    ParsedToken parseLeniently(@Nullable final CharSequence token) {
+        if (token == null) return ParsedToken.MALFORMED;
+        try {
+            return parseToken(TokenInput.of(token), true);
+        } catch (SignatureException e) {
+            return ParsedToken.BAD_SIGNATURE;
         }
+    }
 
-        if (!signatureValid) {
-            throw new SignatureException("Invalid signature");
+    /**
+     * @param loader Fetches the account of an id, for tokens to load it lazily.
+     * @return What the revocation index knows of the account of each token, {@code null} where it must be fetched.
+     */
+    @Nonnull
+    private IAccount[] indexedAccounts(@Nonnull final ParsedToken[] parsed, @Nonnull final Function<String, IAccount> loader) {
+        final IAccount[] indexed = new IAccount[parsed.length];
+        if (revocationIndex == null) return indexed;
+        for (int i = 0; i < parsed.length; i++) {
+            final ParsedToken token = parsed[i];
+            if (token.isVerified()) indexed[i] = indexedAccount(token, () -> loader.apply(token.id()));
         }
+        return indexed;
+    }
 
-        parsed[1] = new String(Base64.getDecoder().decode(parts[index].getBytes(StandardCharsets.UTF_8)));
-        parsed[2] = new String(Base64.getDecoder().decode(parts[1 + index].getBytes(StandardCharsets.UTF_8)));
+    @Nonnull
+    private List<ValidationResult> toResults(@Nonnull final ParsedToken[] parsed, @Nonnull final IAccount[] indexed, @Nonnull final Map<String, IAccount> accounts) {
+        final List<ValidationResult> results = new ArrayList<>(parsed.length);
+        for (int i = 0; i < parsed.length; i++) {
+            final ParsedToken token = parsed[i];
+            final ValidationResult result = toResult(token, !token.isVerified() ? null : indexed[i] != null ? indexed[i] : accounts.get(token.id()));
+            if (metrics != TokenizeMetrics.NOOP) metrics.onValidation(result.getStatus(), -1);
+            results.add(result);
+        }
+        return results;
+    }
+
+    @Nonnull
+    ValidationResult toResult(@Nonnull final ParsedToken parsed, @Nullable final IAccount account) {
+        if (parsed == ParsedToken.MALFORMED) return ValidationResult.MALFORMED;
+        if (parsed == ParsedToken.BAD_SIGNATURE) return ValidationResult.BAD_SIGNATURE;
+        if (account == null) return ValidationResult.UNKNOWN_ACCOUNT;
+        if (parsed.genTime <= account.tokensValidSince()) return ValidationResult.REVOKED;
+        return new ValidationResult(ValidationResult.Status.VALID, newToken(parsed, account));
+    }
+
+    /**
+     * Validates a single token asynchronously, reporting signature and format failures as results. Only a failing
+     * fetch completes the stage exceptionally, and cancelling the stage cancels the fetch.
+     *
+     * @param token          The token to validate.
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the result of the validation.
+     */
+    @Nonnull
+    public CompletionStage<ValidationResult> validateResult(@Nonnull final CharSequence token, @Nonnull final AsyncAccountFetcher accountFetcher) {
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final ParsedToken parsed;
+        try {
+            parsed = parseToken(TokenInput.of(token), start);
+        } catch (SignatureException e) {
+            return CompletableFuture.completedFuture(ValidationResult.BAD_SIGNATURE);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ValidationResult.MALFORMED);
+        }
+        final CompletionStage<IAccount> fetched = lookupAccount(parsed, accountFetcher);
+        final CompletableFuture<ValidationResult> validated = fetched.thenApply(account -> {
+            final ValidationResult result = toResult(parsed, account);
+            if (metrics != TokenizeMetrics.NOOP) metrics.onValidation(result.getStatus(), System.nanoTime() - start);
+            return result;
+        }).toCompletableFuture();
+        validated.whenComplete((result, error) -> {
+            if (error != null && fetched instanceof Future) ((Future<?>) fetched).cancel(false);
+        });
+        return validated;
+    }
+
+    @Nonnull
+    private VerifiedToken verifyToken(@Nonnull final TokenInput token) throws SignatureException {
+        return new VerifiedToken(this, parseToken(token, metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime()));
+    }
+
+    @Nullable
+    private Token validateToken(@Nonnull final TokenInput token, @Nonnull AccountFetcher accountFetcher) throws SignatureException {
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        return resolve(parseToken(token, start), accountFetcher, start);
+    }
+
+    @Nonnull
+    private CompletionStage<Token> validateToken(@Nonnull final TokenInput token, @Nonnull AsyncAccountFetcher accountFetcher) throws SignatureException {
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        final ParsedToken parsed = parseToken(token, start);
+        return toToken(parsed, lookupAccount(parsed, accountFetcher), start);
+    }
+
+    /**
+     * Fetches the account of a verified token, and checks the token hasn't been revoked.
+     */
+    @Nullable
+    Token resolve(@Nonnull final ParsedToken parsed, @Nonnull final AccountFetcher accountFetcher, final long start) {
+        final IAccount account = lookupAccount(parsed, accountFetcher);
+        final Token result = account != null && parsed.genTime > account.tokensValidSince()
+                ? newToken(parsed, account) : null;
+        recordValidation(account, result, start);
+        return result;
+    }
+
+    /**
+     * Fetches the account of a verified token, and checks the token hasn't been revoked.
+     */
+    @Nonnull
+    CompletionStage<Token> resolve(@Nonnull final ParsedToken parsed, @Nonnull final AsyncAccountFetcher accountFetcher, final long start) {
+        return toToken(parsed, lookupAccount(parsed, accountFetcher), start);
+    }
+
+    /**
+     * @return A token for the account, loading it lazily if it is only known through the revocation index.
+     */
+    @Nonnull
+    private Token newToken(@Nonnull final ParsedToken parsed, @Nonnull final IAccount account) {
+        if (account instanceof IndexedAccount) {
+            return new Token(this, parsed.id(), ((IndexedAccount) account).loader, parsed.prefix, parsed.genTime, parsed.source);
+        }
+        return new Token(this, account, parsed.prefix, parsed.genTime, parsed.source);
+    }
+
+    /**
+     * @param loader Fetches the account, for the token to load it lazily.
+     * @return What the revocation index knows of the account, or {@code null} if it must be fetched.
+     */
+    @Nullable
+    private IAccount indexedAccount(@Nonnull final ParsedToken parsed, @Nonnull final Supplier<IAccount> loader) {
+        if (revocationIndex == null) return null;
+        final long validSince = revocationIndex.get(parsed.id());
+        return validSince < 0 ? null : new IndexedAccount(parsed.id(), validSince, loader);
+    }
+
+    /**
+     * @return Whether the revocation index knows the token has been revoked.
+     */
+    boolean isIndexedRevoked(@Nonnull final ParsedToken parsed) {
+        // A missing entry is -1, and generation times are never negative.
+        return revocationIndex != null && parsed.genTime <= revocationIndex.get(parsed.id());
+    }
+
+    /**
+     * @return A stage completed with the token once the account is fetched, or with the failure of the fetch.
+     */
+    @Nonnull
+    private CompletionStage<Token> toToken(@Nonnull final ParsedToken parsed, @Nonnull final CompletionStage<IAccount> fetched, final long start) {
+        return fetched.thenApply(account -> {
+            final Token result = account != null && parsed.genTime > account.tokensValidSince()
+                    ? newToken(parsed, account) : null;
+            recordValidation(account, result, start);
+            return result;
+        });
+    }
+
+    /**
+     * Parses a token for a single validation, reporting failures to the metrics.
+     */
+    @Nonnull
+    private ParsedToken parseToken(@Nonnull final TokenInput token, final long start) throws SignatureException {
+        return parseToken(token, start, false);
+    }
+
+    /**
+     * @param numeric Whether to parse numeric ids into {@link ParsedToken#numericId} without building a String.
+     */
+    @Nonnull
+    private ParsedToken parseToken(@Nonnull final TokenInput token, final long start, final boolean numeric) throws SignatureException {
+        try {
+            return parseToken(token, false, numeric);
+        } catch (SignatureException | IllegalArgumentException e) {
+            if (metrics != TokenizeMetrics.NOOP) {
+                metrics.onValidation(e instanceof SignatureException ? ValidationResult.Status.BAD_SIGNATURE : ValidationResult.Status.MALFORMED,
+                        System.nanoTime() - start);
+            }
+            throw e;
+        }
+    }
+
+    private void recordValidation(@Nullable final IAccount account, @Nullable final Token result, final long start) {
+        if (metrics == TokenizeMetrics.NOOP) return;
+        metrics.onValidation(account == null ? ValidationResult.Status.UNKNOWN_ACCOUNT
+                : result == null ? ValidationResult.Status.REVOKED : ValidationResult.Status.VALID, System.nanoTime() - start);
+    }
+
+    /**
+     * @return The account as known by the revocation index, or else from the fetcher.
+     */
+    @Nullable
+    private IAccount lookupAccount(@Nonnull final ParsedToken parsed, @Nonnull final AccountFetcher accountFetcher) {
+        final IAccount indexed = indexedAccount(parsed, () -> fetchAccount(parsed.id(), accountFetcher));
+        return indexed != null ? indexed : fetchAccount(parsed.id(), accountFetcher);
+    }
+
+    /**
+     * @return The account as known by the revocation index, or else from the fetcher.
+     */
+    @Nonnull
+    private CompletionStage<IAccount> lookupAccount(@Nonnull final ParsedToken parsed, @Nonnull final AsyncAccountFetcher accountFetcher) {
+        final IAccount indexed = indexedAccount(parsed, () -> Futures.join(fetchAccount(parsed.id(), accountFetcher).toCompletableFuture()));
+        return indexed != null ? CompletableFuture.completedFuture(indexed) : fetchAccount(parsed.id(), accountFetcher);
+    }
+
+    /**
+     * @return The account from the fetcher, unless the account filter rules it out.
+     */
+    @Nullable
+    private IAccount fetchAccount(@Nonnull final String id, @Nonnull final AccountFetcher accountFetcher) {
+        if (isUnknown(id)) return null;
+        if (metrics == TokenizeMetrics.NOOP) return accountFetcher.fetchAccount(id);
+
+        final long start = System.nanoTime();
+        try {
+            return accountFetcher.fetchAccount(id);
+        } finally {
+            metrics.onFetch(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The account from the fetcher, unless the account filter rules it out.
+     */
+    @Nonnull
+    private CompletionStage<IAccount> fetchAccount(@Nonnull final String id, @Nonnull final AsyncAccountFetcher accountFetcher) {
+        if (isUnknown(id)) return CompletableFuture.completedFuture(null);
+        if (metrics == TokenizeMetrics.NOOP) return accountFetcher.fetchAccount(id);
+        final long start = System.nanoTime();
+        // The fetcher's own stage is returned so cancelling it still reaches the fetcher.
+        final CompletionStage<IAccount> fetched = accountFetcher.fetchAccount(id);
+        fetched.whenComplete((account, error) -> metrics.onFetch(System.nanoTime() - start));
+        return fetched;
+    }
+
+    /**
+     * @return The account as known by the revocation index, or else from the fetcher.
+     */
+    @Nullable
+    private IAccount lookupAccount(@Nonnull final ParsedToken parsed, @Nonnull final LongAccountFetcher accountFetcher) {
+        final IAccount indexed = indexedAccount(parsed, () -> fetchAccount(parsed, accountFetcher));
+        return indexed != null ? indexed : fetchAccount(parsed, accountFetcher);
+    }
+
+    /**
+     * @return The account as known by the revocation index, or else from the fetcher.
+     */
+    @Nonnull
+    private CompletionStage<IAccount> lookupAccount(@Nonnull final ParsedToken parsed, @Nonnull final AsyncLongAccountFetcher accountFetcher) {
+        final IAccount indexed = indexedAccount(parsed, () -> Futures.join(fetchAccount(parsed, accountFetcher).toCompletableFuture()));
+        return indexed != null ? CompletableFuture.completedFuture(indexed) : fetchAccount(parsed, accountFetcher);
+    }
+
+    /**
+     * @return The account from the fetcher, unless the account filter rules it out.
+     */
+    @Nullable
+    private IAccount fetchAccount(@Nonnull final ParsedToken parsed, @Nonnull final LongAccountFetcher accountFetcher) {
+        // The filter works on String ids, only build it when there is one.
+        if (accountFilter != null && isUnknown(parsed.id())) return null;
+        if (parsed.numericId < 0) return null;
+        if (metrics == TokenizeMetrics.NOOP) return accountFetcher.fetchAccount(parsed.numericId);
+
+        final long start = System.nanoTime();
+        try {
+            return accountFetcher.fetchAccount(parsed.numericId);
+        } finally {
+            metrics.onFetch(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The account from the fetcher, unless the account filter rules it out.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private CompletionStage<IAccount> fetchAccount(@Nonnull final ParsedToken parsed, @Nonnull final AsyncLongAccountFetcher accountFetcher) {
+        if (accountFilter != null && isUnknown(parsed.id())) return CompletableFuture.completedFuture(null);
+        if (parsed.numericId < 0) return CompletableFuture.completedFuture(null);
+        final long start = metrics == TokenizeMetrics.NOOP ? 0 : System.nanoTime();
+        // Stages are only read from, so widening the type is safe, and keeps cancellation reaching the fetcher.
+        final CompletionStage<IAccount> fetched = (CompletionStage<IAccount>) (CompletionStage<?>) accountFetcher.fetchAccount(parsed.numericId);
+        if (metrics != TokenizeMetrics.NOOP) {
+            fetched.whenComplete((account, error) -> metrics.onFetch(System.nanoTime() - start));
+        }
+        return fetched;
+    }
+
+    /**
+     * @return Whether the account filter knows the account doesn't exist.
+     */
+    private boolean isUnknown(@Nonnull final String id) {
+        final AccountFilter filter = accountFilter;
+        return filter != null && !filter.mightContain(id);
+    }
+
+    /**
+     * Parses a token, unless the verified token cache already holds it.
+     *
+     * @param lenient Whether to return {@link ParsedToken#MALFORMED} or {@link ParsedToken#BAD_SIGNATURE}
+     *                instead of throwing, for callers validating a lot of tokens at once.
+     */
+    @Nonnull
+    private ParsedToken parseToken(@Nonnull final TokenInput token, final boolean lenient) throws SignatureException {
+        return parseToken(token, lenient, false);
+    }
+
+    @Nonnull
+    private ParsedToken parseToken(@Nonnull final TokenInput token, final boolean lenient, final boolean numeric) throws SignatureException {
+        final String source = verifiedTokens == null ? null : token.source();
+        if (source == null) {
+            return decodeToken(token, lenient, numeric);
+        }
+        // Read before checking the signature, so a key retired meanwhile invalidates the entry.
+        final long generation = keyring.generation();
+        final ParsedToken cached = verifiedTokens.get(source, generation);
+        if (cached != null) {
+            return cached;
+        }
+        final ParsedToken parsed = decodeToken(token, lenient, numeric);
+        if (parsed.isVerified()) {
+            verifiedTokens.put(source, parsed, generation);
+        }
         return parsed;
     }
 
+    /**
+     * Parses a token in a single pass. The signature is checked against the original characters, and the
+     * fields are only decoded once it is known to be valid.
+     */
+    @Nonnull
+    private ParsedToken decodeToken(@Nonnull final TokenInput token, final boolean lenient, final boolean numeric) throws SignatureException {
+        final int length = token.length();
+        int first = -1, second = -1, third = -1, dots = 0;
+        for (int i = 0; i < length; i++) {
+            if (token.at(i) != '.') continue;
+            if (dots == 0) first = i;
+            else if (dots == 1) second = i;
+            else if (dots == 2) third = i;
+            dots++;
+        }
+        if (dots < 1 || dots > 3) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: expected 2 to 4 parts, got " + (dots + 1));
+        }
+        // Version 2 payloads start with 0x02, so 'A' in Base64. Version 1 times are digits, which never do.
+        if (dots == 1 || dots == 2 && first + 1 < length && token.at(first + 1) == 'A') {
+            return parseTokenV2(token, lenient, numeric, dots == 2 ? first : -1, dots == 2 ? second : first);
+        }
+        if (dots == 1) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: expected 3 or 4 parts, got 2");
+        }
+
+        final int signedEnd = dots == 3 ? third : second;
+        final TokenCodec.Scratch scratch = TokenCodec.scratch();
+        final int signatureLength = TokenCodec.decodeBase64(token, signedEnd + 1, length, scratch.signature);
+        final HmacEngine engine = keyring.get(0);
+        if (engine == null) {
+            if (lenient) return ParsedToken.BAD_SIGNATURE;
+            throw new SignatureException("Unknown signing key 0");
+        }
+        final int digestLength = timedSign(engine, token, signedEnd, scratch.digest, SIGNATURE_PREFIX_V1);
+        if (signatureLength != digestLength || !TokenCodec.constantTimeEquals(scratch.signature, scratch.digest, digestLength)) {
+            if (lenient) return ParsedToken.BAD_SIGNATURE;
+            throw new SignatureException("Invalid signature");
+        }
+
+        final int idStart = dots == 3 ? first + 1 : 0, idEnd = dots == 3 ? second : first;
+        final byte[] buf = bufferFor(idEnd - idStart, scratch);
+        final int idLength = TokenCodec.decodeBase64(token, idStart, idEnd, buf);
+        if (idLength < 0) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: malformed account id");
+        }
+        final long numericId = numeric ? TokenCodec.parseCanonicalLong(buf, 0, idLength) : -1;
+        final String id = numericId < 0 ? new String(buf, 0, idLength, StandardCharsets.UTF_8) : null;
+
+        final int timeLength = TokenCodec.decodeBase64(token, idEnd + 1, signedEnd, scratch.chunk);
+        final long genTime = timeLength < 0 ? -1 : TokenCodec.parseLong(scratch.chunk, 0, timeLength);
+        if (genTime < 0) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: malformed generation time");
+        }
+        final String prefix = dots == 3 ? token.string(0, first) : null;
+        return id == null ? new ParsedToken(prefix, numericId, genTime, token.source()) : new ParsedToken(prefix, id, genTime, token.source());
+    }
+
+    /**
+     * @param prefixEnd Index of the dot after the prefix, or -1 if there is none.
+     * @param signedEnd Index of the dot before the signature.
+     */
+    @Nonnull
+    private ParsedToken parseTokenV2(@Nonnull final TokenInput token, final boolean lenient, final boolean numeric,
+                                     final int prefixEnd, final int signedEnd) throws SignatureException {
+        final TokenCodec.Scratch scratch = TokenCodec.scratch();
+        // The first 4 characters hold the version, key id and MAC length, enough to pick the key without decoding the rest.
+        if (signedEnd - prefixEnd - 1 < 4 || TokenCodec.decodeBase64Url(token, prefixEnd + 1, prefixEnd + 5, scratch.signature) != 3) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: malformed payload");
+        }
+        final int keyId = scratch.signature[1] & 0xff;
+        final int declaredLength = scratch.signature[2] & 0xff;
+        final HmacEngine engine = keyring.get(keyId);
+        if (engine == null) {
+            if (lenient) return ParsedToken.BAD_SIGNATURE;
+            throw new SignatureException("Unknown signing key " + keyId);
+        }
+
+        final int signatureLength = TokenCodec.decodeBase64Url(token, signedEnd + 1, token.length(), scratch.signature);
+        // The signed payload states the MAC length, so each token has a single valid signature.
+        final int digestLength = timedSign(engine, token, signedEnd, scratch.digest, SIGNATURE_PREFIX_V2);
+        if (signatureLength != declaredLength || declaredLength < Math.min(minMacLength, digestLength) || declaredLength > digestLength
+                || !TokenCodec.constantTimeEquals(scratch.signature, scratch.digest, declaredLength)) {
+            if (lenient) return ParsedToken.BAD_SIGNATURE;
+            throw new SignatureException("Invalid signature");
+        }
+
+        final byte[] buf = bufferFor(signedEnd - prefixEnd - 1, scratch);
+        final int length = TokenCodec.decodeBase64Url(token, prefixEnd + 1, signedEnd, buf);
+        final long idLength = length < 4 || buf[0] != VERSION_2 ? -1 : TokenCodec.getVarLong(buf, 3, length);
+        final int idStart = 3 + TokenCodec.varLongSize(idLength);
+        final long genTime = idLength < 0 || idLength > length - idStart ? -1 : TokenCodec.getVarLong(buf, idStart + (int) idLength, length);
+        if (genTime < 0 || idStart + idLength + TokenCodec.varLongSize(genTime) != length) {
+            if (lenient) return ParsedToken.MALFORMED;
+            throw new IllegalArgumentException("Invalid token: malformed payload");
+        }
+
+        final String prefix = prefixEnd < 0 ? null : token.string(0, prefixEnd);
+        final long numericId = numeric ? TokenCodec.parseCanonicalLong(buf, idStart, (int) idLength) : -1;
+        if (numericId >= 0) {
+            return new ParsedToken(prefix, numericId, genTime, token.source());
+        }
+        return new ParsedToken(prefix, new String(buf, idStart, (int) idLength, StandardCharsets.UTF_8), genTime, token.source());
+    }
+
+    private static byte[] bufferFor(final int base64Chars, @Nonnull final TokenCodec.Scratch scratch) {
+        final int length = TokenCodec.decodedLength(base64Chars);
+        return length <= scratch.chunk.length ? scratch.chunk : new byte[length];
+    }
+
     /**
      * @return Current token time based on the Tokenize Epoch.
      */
@@ -151,18 +1074,158 @@ public class Tokenize {
         return (System.currentTimeMillis() - TOKENIZE_EPOCH) / 1000;
     }
 
-    String computeHmac(final String string) {
+    /**
+     * @return The signed token, in the format version of this instance.
+     */
+    @Nonnull
+    String serialize(@Nullable final String prefix, @Nonnull final String id, final long genTime) {
+        final byte[] rawId = id.getBytes(StandardCharsets.UTF_8);
+        final StringBuilder token = new StringBuilder();
+        appendToken(token, prefix, rawId, rawId.length, genTime);
+        return token.toString();
+    }
+
+    /**
+     * @return The signed token for a numeric id, written without going through a String.
+     */
+    @Nonnull
+    String serialize(@Nullable final String prefix, final long id, final long genTime) {
+        // The digit writer only handles non-negative numbers, others go through their String form.
+        if (id < 0) return serialize(prefix, Long.toString(id), genTime);
+        final byte[] digits = TokenCodec.scratch().digits;
+        final StringBuilder token = new StringBuilder();
+        appendToken(token, prefix, digits, TokenCodec.putLong(digits, 0, id), genTime);
+        return token.toString();
+    }
+
+    /**
+     * Appends the signed token of an account, for callers writing a lot of tokens into the same builder.
+     */
+    void appendToken(@Nonnull final StringBuilder token, @Nullable final String prefix, @Nonnull final IAccount account, final long genTime) {
+        final long id = account instanceof ILongAccount ? ((ILongAccount) account).getLongTokenId() : -1;
+        if (id >= 0) {
+            final byte[] digits = TokenCodec.scratch().digits;
+            appendToken(token, prefix, digits, TokenCodec.putLong(digits, 0, id), genTime);
+        } else {
+            final byte[] rawId = account.getTokenId().getBytes(StandardCharsets.UTF_8);
+            appendToken(token, prefix, rawId, rawId.length, genTime);
+        }
+    }
+
+    private void appendToken(@Nonnull final StringBuilder token, @Nullable final String prefix, @Nonnull final byte[] rawId,
+                             final int idLength, final long genTime) {
+        final int start = token.length();
+        if (prefix != null) {
+            token.append(prefix).append('.');
+        }
+
+        // The primary key may be retired right after being replaced, in which case the new one is picked up.
+        int keyId;
+        HmacEngine engine;
+        do {
+            keyId = version == VERSION_2 ? keyring.getPrimary() : 0;
+            engine = keyring.get(keyId);
+            if (engine == null && version == VERSION) {
+                throw new IllegalStateException("Version 1 tokens require key 0.");
+            }
+        } while (engine == null);
+
+        if (version == VERSION_2) {
+            final int payloadLength = 3 + TokenCodec.varLongSize(idLength) + idLength + TokenCodec.varLongSize(genTime);
+            // The chunk buffer is only needed again once signing, when the payload has been encoded already.
+            final byte[] chunk = TokenCodec.scratch().chunk;
+            final byte[] payload = payloadLength <= chunk.length ? chunk : new byte[payloadLength];
+            payload[0] = VERSION_2;
+            payload[1] = (byte) keyId;
+            payload[2] = (byte) macLength;
+            int n = TokenCodec.putVarLong(payload, 3, idLength);
+            System.arraycopy(rawId, 0, payload, n, idLength);
+            TokenCodec.putVarLong(payload, n + idLength, genTime);
+            TokenCodec.appendBase64Url(token, payload, 0, payloadLength);
+        } else {
+            appendPaddedBase64(token, rawId, idLength);
+            token.append('.');
+            // The id has been written already, so its buffer is free again.
+            final byte[] digits = TokenCodec.scratch().digits;
+            appendPaddedBase64(token, digits, TokenCodec.putLong(digits, 0, genTime));
+        }
+
+        final int signedEnd = token.length();
+        token.append('.');
+        final byte[] digest = TokenCodec.scratch().digest;
+        if (version == VERSION_2) {
+            sign(engine, TokenInput.of(token), start, signedEnd, digest, SIGNATURE_PREFIX_V2);
+            TokenCodec.appendBase64Url(token, digest, 0, macLength);
+        } else {
+            TokenCodec.appendBase64(token, digest, 0, sign(engine, TokenInput.of(token), start, signedEnd, digest, SIGNATURE_PREFIX_V1));
+        }
+    }
+
+    /**
+     * Version 1 tokens use padded Base64.
+     */
+    private static void appendPaddedBase64(@Nonnull final StringBuilder token, @Nonnull final byte[] src, final int len) {
+        TokenCodec.appendBase64(token, src, 0, len);
+        for (int i = len % 3; i != 0 && i < 3; i++) {
+            token.append('=');
+        }
+    }
+
+    /**
+     * Signs the start of a token being validated, reporting the time it took to the metrics.
+     */
+    private int timedSign(@Nonnull final HmacEngine engine, @Nonnull final TokenInput token, final int end, @Nonnull final byte[] digest,
+                          @Nonnull final byte[] signaturePrefix) {
+        if (metrics == TokenizeMetrics.NOOP) return sign(engine, token, 0, end, digest, signaturePrefix);
+        final long start = System.nanoTime();
+        final int length = sign(engine, token, 0, end, digest, signaturePrefix);
+        metrics.onSignature(System.nanoTime() - start);
+        return length;
+    }
+
+    /**
+     * Signs a range of a token into the given buffer.
+     *
+     * @return The length of the signature.
+     */
+    private static int sign(@Nonnull final HmacEngine hmacEngine, @Nonnull final TokenInput data, final int start, final int end,
+                            @Nonnull final byte[] digest, @Nonnull final byte[] signaturePrefix) {
+        final Mac mac = hmacEngine.acquire();
         try {
-            final Mac hmac = Mac.getInstance("HmacSHA256");
-            final SecretKeySpec key = new SecretKeySpec(secret, "HmacSHA256");
-            hmac.init(key);
-
-            final byte[] data = hmac.doFinal(("TTF." + VERSION + "." + string).getBytes(StandardCharsets.UTF_8));
-            return new String(Base64.getEncoder().encode(data)).replace("=", "");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Tokenize is unable to function if HmacSHA256 algorithm isn't present!", e);
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException("is this ever reachable?", e);
+            mac.update(signaturePrefix);
+            data.update(mac, start, end, TokenCodec.scratch().chunk);
+            mac.doFinal(digest, 0);
+            return mac.getMacLength();
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(hmacEngine.getAlgorithm() + " signatures do not fit the signing buffer", e);
+        } finally {
+            hmacEngine.release(mac);
+        }
+    }
+
+    /**
+     * What the revocation index knows of an account. Never handed out: tokens validated through it are given the
+     * loader instead, fetching the actual account when it is asked for.
+     */
+    private static final class IndexedAccount implements IAccount {
+        private final String id;
+        private final long validSince;
+        private final Supplier<IAccount> loader;
+
+        IndexedAccount(@Nonnull final String id, final long validSince, @Nonnull final Supplier<IAccount> loader) {
+            this.id = id;
+            this.validSince = validSince;
+            this.loader = loader;
+        }
+
+        @Override
+        public String getTokenId() {
+            return id;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return validSince;
         }
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Listener notified of what Tokenize spends its time on. Durations are in nanoseconds.
+ * <p>
+ * Methods are called from the validating threads, so they must be cheap and thread-safe. When the listener is
+ * {@link #NOOP}, Tokenize doesn't even read the clock.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ * @see DefaultTokenizeMetrics
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public interface TokenizeMetrics {
+    /**
+     * Listener ignoring everything.
+     */
+    TokenizeMetrics NOOP = new TokenizeMetrics() {
+    };
+
+    /**
+     * Called once a token has been validated, synchronously or asynchronously.
+     *
+     * @param outcome The outcome of the validation.
+     * @param nanos   How long the whole validation took, or -1 if the token was validated as part of a batch.
+     */
+    default void onValidation(@Nonnull final ValidationResult.Status outcome, final long nanos) {
+    }
+
+    /**
+     * Called once the signature of a token has been computed.
+     *
+     * @param nanos How long computing the HMAC took.
+     */
+    default void onSignature(final long nanos) {
+    }
+
+    /**
+     * Called once an account fetcher answered, whether with an account or not.
+     *
+     * @param nanos How long the fetch took. Bulk fetches are reported once.
+     */
+    default void onFetch(final long nanos) {
+    }
+
+    /**
+     * Called once an OTP code has been checked.
+     *
+     * @param valid Whether the code was accepted.
+     * @param nanos How long the check took.
+     */
+    default void onOtpValidation(final boolean valid, final long nanos) {
+    }
+}
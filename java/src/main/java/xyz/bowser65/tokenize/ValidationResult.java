@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import lombok.Getter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Outcome of a token validation, for APIs reporting failures as values instead of exceptions.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@Getter
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ValidationResult {
+    static final ValidationResult MALFORMED = new ValidationResult(Status.MALFORMED, null);
+    static final ValidationResult BAD_SIGNATURE = new ValidationResult(Status.BAD_SIGNATURE, null);
+    static final ValidationResult UNKNOWN_ACCOUNT = new ValidationResult(Status.UNKNOWN_ACCOUNT, null);
+    static final ValidationResult REVOKED = new ValidationResult(Status.REVOKED, null);
+
+    @Nonnull
+    private final Status status;
+    /**
+     * The validated token, only present if the status is {@link Status#VALID}.
+     */
+    @Nullable
+    private final Token token;
+
+    ValidationResult(@Nonnull final Status status, @Nullable final Token token) {
+        this.status = status;
+        this.token = token;
+    }
+
+    /**
+     * @return Whether the token is valid.
+     */
+    public boolean isValid() {
+        return status == Status.VALID;
+    }
+
+    public enum Status {
+        /**
+         * The token is valid.
+         */
+        VALID,
+        /**
+         * The token isn't a well formed Tokenize token.
+         */
+        MALFORMED,
+        /**
+         * The token signature is invalid.
+         */
+        BAD_SIGNATURE,
+        /**
+         * The account the token belongs to doesn't exist.
+         */
+        UNKNOWN_ACCOUNT,
+        /**
+         * The token got revoked.
+         */
+        REVOKED
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Token whose signature has been checked, but whose account hasn't been fetched yet. Endpoints only needing
+ * the account id and the token age can use it as is and skip the account store entirely, others call
+ * {@link #resolve(AccountFetcher)} to get a fully validated {@link Token}.
+ * <p>
+ * A verified token may still have been revoked: check it against {@link IAccount#tokensValidSince()} yourself,
+ * or through {@link #resolve(AccountFetcher)}, wherever that matters.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class VerifiedToken {
+    private final Tokenize tokenize;
+    private final ParsedToken parsed;
+
+    VerifiedToken(@Nonnull final Tokenize tokenize, @Nonnull final ParsedToken parsed) {
+        this.tokenize = tokenize;
+        this.parsed = parsed;
+    }
+
+    /**
+     * @return The id of the account the token was generated for.
+     */
+    @Nonnull
+    public String getAccountId() {
+        return parsed.id();
+    }
+
+    /**
+     * @return The token prefix, if any.
+     */
+    @Nullable
+    public String getPrefix() {
+        return parsed.prefix;
+    }
+
+    /**
+     * @return The generation time of the token, based on the Tokenize Epoch.
+     */
+    public long getGenTime() {
+        return parsed.genTime;
+    }
+
+    /**
+     * @return How long ago the token was generated, in seconds.
+     */
+    public long getAge() {
+        return Tokenize.currentTokenTime() - parsed.genTime;
+    }
+
+    /**
+     * @param tokensValidSince The {@link IAccount#tokensValidSince()} of the account.
+     * @return Whether the token was generated before the given time, and therefore revoked.
+     */
+    public boolean isRevoked(final long tokensValidSince) {
+        return parsed.genTime <= tokensValidSince;
+    }
+
+    /**
+     * Checks the token against the revocation index of the Tokenize instance, without any I/O. Always
+     * {@code false} if there is no index, or if the index doesn't know the account.
+     *
+     * @return Whether the token is known to be revoked.
+     */
+    public boolean isKnownRevoked() {
+        return tokenize.isIndexedRevoked(parsed);
+    }
+
+    /**
+     * Fetches the account and checks the token hasn't been revoked.
+     *
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return The token, or {@code null} if there is no account associated or if the token has been revoked.
+     */
+    @Nullable
+    public Token resolve(@Nonnull final AccountFetcher accountFetcher) {
+        return tokenize.resolve(parsed, accountFetcher, System.nanoTime());
+    }
+
+    /**
+     * Fetches the account asynchronously and checks the token hasn't been revoked.
+     *
+     * @param accountFetcher The account fetcher used to retrieve the account.
+     * @return A {@link CompletionStage} completed with the token, or {@code null} if there is no account associated
+     * or if the token has been revoked. It completes exceptionally if the fetcher fails.
+     */
+    @Nonnull
+    public CompletionStage<Token> resolve(@Nonnull final AsyncAccountFetcher accountFetcher) {
+        return tokenize.resolve(parsed, accountFetcher, System.nanoTime());
+    }
+}
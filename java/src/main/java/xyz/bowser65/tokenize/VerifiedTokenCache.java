@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+
+/**
+ * Short-lived cache of tokens whose signature has already been checked, so a token presented over and over
+ * only costs a lookup. Entries are keyed by the full token, and a hit requires the exact same string: a hash
+ * collision can never let another token through.
+ * <p>
+ * Entries remember the {@link Keyring#generation()} they were verified under, and are ignored as soon as the
+ * keyring changes, so retiring a key takes effect right away.
+ *
+ * @author Bowser65
+ * @since 17/10/26
+ */
+final class VerifiedTokenCache {
+    static final Duration DEFAULT_TTL = Duration.ofSeconds(10);
+
+    private final StripedCache<String, Verified> cache;
+    private final long ttl;
+
+    VerifiedTokenCache(final long maximumSize, @Nullable final Duration ttl) {
+        this.cache = new StripedCache<>(maximumSize);
+        this.ttl = (ttl == null ? DEFAULT_TTL : ttl).toNanos();
+    }
+
+    /**
+     * @return The parsed token, or {@code null} if it isn't cached or was verified under other keys.
+     */
+    @Nullable
+    ParsedToken get(@Nonnull final String token, final long generation) {
+        final StripedCache.Entry<Verified> entry = cache.get(token, System.nanoTime());
+        if (entry == null || entry.value == null || entry.value.generation != generation) return null;
+        return entry.value.parsed;
+    }
+
+    /**
+     * @param generation Generation of the keyring read before the signature got checked.
+     */
+    void put(@Nonnull final String token, @Nonnull final ParsedToken parsed, final long generation) {
+        cache.put(token, new Verified(parsed, generation), System.nanoTime() + ttl);
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private static final class Verified {
+        final ParsedToken parsed;
+        final long generation;
+
+        Verified(@Nonnull final ParsedToken parsed, final long generation) {
+            this.parsed = parsed;
+            this.generation = generation;
+        }
+    }
+}
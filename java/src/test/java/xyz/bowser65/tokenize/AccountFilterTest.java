@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.SignatureException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AccountFilterTest {
+    @Test
+    public void testFalsePositives() {
+        final AccountFilter filter = AccountFilter.builder().expectedAccounts(10_000).falsePositiveRate(0.01).build();
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("account" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(filter.mightContain("account" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("missing" + i)) falsePositives++;
+        }
+        Assertions.assertTrue(falsePositives < 200, falsePositives + " false positives");
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        final AccountFilter filter = AccountFilter.builder().expectedAccounts(100).build();
+        filter.put("1337");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeTo(out);
+        final AccountFilter read = AccountFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertTrue(read.mightContain("1337"));
+        Assertions.assertEquals(filter.bitSize(), read.bitSize());
+        Assertions.assertEquals(filter.hashCount(), read.hashCount());
+    }
+
+    @Test
+    public void testValidate() throws SignatureException {
+        final AccountFilter filter = AccountFilter.builder().expectedAccounts(100).build();
+        final Tokenize tokenize = Tokenize.builder().secret(TokenizeTest.SECRET).accountFilter(filter).build();
+        final TokenizeTest.Account account = new TokenizeTest.Account("1337", 0);
+        final String token = new Token(tokenize, account, 42).toString();
+
+        final AtomicInteger fetches = new AtomicInteger();
+        final AccountFetcher fetcher = id -> {
+            fetches.incrementAndGet();
+            return account;
+        };
+        Assertions.assertNull(tokenize.validateToken(token, fetcher));
+        Assertions.assertEquals(0, fetches.get());
+
+        filter.put(account);
+        Assertions.assertNotNull(tokenize.validateToken(token, fetcher));
+        Assertions.assertEquals(1, fetches.get());
+
+        tokenize.setAccountFilter(null);
+        Assertions.assertNotNull(tokenize.validateToken(token, fetcher));
+        Assertions.assertEquals(2, fetches.get());
+    }
+}
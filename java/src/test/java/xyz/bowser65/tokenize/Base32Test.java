@@ -30,6 +30,10 @@ package xyz.bowser65.tokenize;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class Base32Test {
     @Test
     public void testDecode() {
@@ -38,4 +42,50 @@ public class Base32Test {
         final byte[] decoded = Base32.decode(base32);
         Assertions.assertEquals(expected, new String(decoded));
     }
+
+    @Test
+    public void testEncode() {
+        Assertions.assertEquals("JVSW65ZB", Base32.encode("Meow!".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals("MZXW6YQ", Base32.encode("foob".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals("", Base32.encode(new byte[0]));
+        for (int length = 0; length < 32; length++) {
+            final byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) data[i] = (byte) (i * 37 + length);
+            Assertions.assertArrayEquals(data, Base32.decode(Base32.encode(data)));
+            Assertions.assertEquals(Base32.encode(data), Base32.encode(ByteBuffer.wrap(data)));
+        }
+    }
+
+    @Test
+    public void testStrict() {
+        Assertions.assertEquals("foob", new String(Base32.decode("MZXW6YQ="), StandardCharsets.US_ASCII));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("mzxw6yq"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZXW 6YQ"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZXW6YQ=="));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZXW6YR"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("MZ1W6YQ"));
+    }
+
+    @Test
+    public void testLenient() {
+        Assertions.assertEquals("foob", new String(Base32.decode("mzxw-6yq=\n", true), StandardCharsets.US_ASCII));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Base32.decode("mz1w", true));
+    }
+
+    @Test
+    public void testBuffers() {
+        final byte[] bytes = new byte[16];
+        Assertions.assertEquals(5, Base32.decode("xxJVSW65ZB".toCharArray(), 2, 8, bytes, 3, false));
+        Assertions.assertEquals("Meow!", new String(bytes, 3, 5, StandardCharsets.US_ASCII));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(6);
+        buffer.put((byte) 1);
+        Assertions.assertEquals(5, Base32.decode("JVSW65ZB", buffer, false));
+        Assertions.assertEquals(6, buffer.position());
+        Assertions.assertThrows(BufferOverflowException.class, () -> Base32.decode("JVSW65ZB", buffer, false));
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(5);
+        Assertions.assertEquals(5, Base32.decode("JVSW65ZB", direct, false));
+        Assertions.assertFalse(direct.hasRemaining());
+    }
 }
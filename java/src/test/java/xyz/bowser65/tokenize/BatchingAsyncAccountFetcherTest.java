@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class BatchingAsyncAccountFetcherTest {
+    @Test
+    public void testBatches() throws Exception {
+        final List<Collection<String>> batches = new CopyOnWriteArrayList<>();
+        final BatchingAsyncAccountFetcher fetcher = BatchingAsyncAccountFetcher.builder()
+                .fetcher(ids -> {
+                    batches.add(new ArrayList<>(ids));
+                    final Map<String, IAccount> accounts = new HashMap<>();
+                    for (final String id : ids) {
+                        if (!id.equals("unknown")) accounts.put(id, new TokenizeTest.Account(id, 0));
+                    }
+                    return CompletableFuture.completedFuture(accounts);
+                })
+                .window(Duration.ofSeconds(10))
+                .maxBatchSize(3)
+                .build();
+
+        final CompletionStage<IAccount> first = fetcher.fetchAccount("1");
+        final CompletionStage<IAccount> again = fetcher.fetchAccount("1");
+        final CompletionStage<IAccount> unknown = fetcher.fetchAccount("unknown");
+        final CompletionStage<IAccount> third = fetcher.fetchAccount("3");
+
+        Assertions.assertEquals("1", first.toCompletableFuture().get(5, TimeUnit.SECONDS).getTokenId());
+        Assertions.assertEquals("1", again.toCompletableFuture().get(5, TimeUnit.SECONDS).getTokenId());
+        Assertions.assertNull(unknown.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("3", third.toCompletableFuture().get(5, TimeUnit.SECONDS).getTokenId());
+        Assertions.assertEquals(1, batches.size());
+        Assertions.assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final BatchingAsyncAccountFetcher fetcher = BatchingAsyncAccountFetcher.builder()
+                .fetcher(ids -> CompletableFuture.completedFuture(new HashMap<>()))
+                .window(Duration.ofMillis(5))
+                .build();
+        Assertions.assertNull(fetcher.fetchAccount("1").toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInFlightLimit() throws Exception {
+        final List<CompletableFuture<Map<String, IAccount>>> pending = new CopyOnWriteArrayList<>();
+        final BatchingAsyncAccountFetcher fetcher = BatchingAsyncAccountFetcher.builder()
+                .fetcher(ids -> {
+                    final CompletableFuture<Map<String, IAccount>> future = new CompletableFuture<>();
+                    pending.add(future);
+                    return future;
+                })
+                .maxBatchSize(1)
+                .maxInFlightBatches(1)
+                .build();
+
+        fetcher.fetchAccount("1");
+        final CompletionStage<IAccount> second = fetcher.fetchAccount("2");
+        Assertions.assertEquals(1, pending.size());
+
+        pending.get(0).completeExceptionally(new IllegalStateException("store down"));
+        Assertions.assertEquals(2, pending.size());
+        pending.get(1).complete(new HashMap<>());
+        Assertions.assertNull(second.toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSlowFetcherDoesNotBlockScheduler() throws Exception {
+        final CountDownLatch called = new CountDownLatch(1), release = new CountDownLatch(1);
+        // Batches get their own executor, so the blocked fetch doesn't starve the common pool timeouts complete on.
+        final ExecutorService flushes = Executors.newSingleThreadExecutor();
+        final BatchingAsyncAccountFetcher fetcher = BatchingAsyncAccountFetcher.builder()
+                .fetcher(ids -> {
+                    called.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return CompletableFuture.completedFuture(new HashMap<>());
+                })
+                .window(Duration.ofMillis(1))
+                .executor(flushes)
+                .build();
+
+        try {
+            final CompletionStage<IAccount> blocked = fetcher.fetchAccount("1");
+            Assertions.assertTrue(called.await(5, TimeUnit.SECONDS));
+
+            // The shared scheduler must still be free to fire unrelated timeouts.
+            final Tokenize tokenize = new Tokenize(TokenizeTest.SECRET);
+            final String token = tokenize.generateToken(new TokenizeTest.Account("1337", 0)).toString();
+            final ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> tokenize
+                    .validateTokenAsync(token, id -> new CompletableFuture<>(), null, Duration.ofMillis(10))
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+            Assertions.assertFalse(blocked.toCompletableFuture().isDone());
+        } finally {
+            release.countDown();
+            flushes.shutdown();
+        }
+    }
+}
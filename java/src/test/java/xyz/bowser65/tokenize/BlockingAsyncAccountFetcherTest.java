@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BlockingAsyncAccountFetcherTest {
+    @Test
+    public void testFetches() throws Exception {
+        final IAccount account = new TokenizeTest.Account("1337", 0);
+        final BlockingAsyncAccountFetcher fetcher = BlockingAsyncAccountFetcher.builder()
+                .fetcher(TokenizeTest.fetcher(account))
+                .build();
+        Assertions.assertSame(account, fetcher.fetchAccount("1337").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertNull(fetcher.fetchAccount("42").toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+        final BlockingAsyncAccountFetcher failing = BlockingAsyncAccountFetcher.builder()
+                .fetcher(id -> {
+                    throw new IllegalStateException("store down");
+                })
+                .build();
+        final ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> failing.fetchAccount("1337").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        final AtomicInteger running = new AtomicInteger(), peak = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1), twoStarted = new CountDownLatch(2), thirdStarted = new CountDownLatch(3);
+        final BlockingAsyncAccountFetcher fetcher = BlockingAsyncAccountFetcher.builder()
+                .fetcher(id -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    twoStarted.countDown();
+                    thirdStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    running.decrementAndGet();
+                    return null;
+                })
+                .maxConcurrency(2)
+                .build();
+
+        final List<CompletionStage<IAccount>> fetches = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            fetches.add(fetcher.fetchAccount(String.valueOf(i)));
+        }
+        Assertions.assertTrue(twoStarted.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(thirdStarted.await(100, TimeUnit.MILLISECONDS));
+        Assertions.assertEquals(2, running.get());
+        release.countDown();
+        for (final CompletionStage<IAccount> fetch : fetches) {
+            fetch.toCompletableFuture().get(5, TimeUnit.SECONDS);
+        }
+        Assertions.assertEquals(2, peak.get());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachingAccountFetcherTest {
+    private final IAccount account = new TokenizeTest.Account("1337", 0);
+
+    @Test
+    public void testCaches() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachingAccountFetcher fetcher = CachingAccountFetcher.builder()
+                .fetcher(id -> {
+                    fetches.incrementAndGet();
+                    return id.equals("1337") ? account : null;
+                })
+                .negativeTtl(Duration.ofMinutes(1))
+                .build();
+
+        Assertions.assertSame(account, fetcher.fetchAccount("1337"));
+        Assertions.assertSame(account, fetcher.fetchAccount("1337"));
+        Assertions.assertNull(fetcher.fetchAccount("42"));
+        Assertions.assertNull(fetcher.fetchAccount("42"));
+        Assertions.assertEquals(2, fetches.get());
+
+        fetcher.invalidate("1337");
+        Assertions.assertSame(account, fetcher.fetchAccount("1337"));
+        Assertions.assertEquals(3, fetches.get());
+    }
+
+    @Test
+    public void testNoNegativeCaching() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachingAccountFetcher fetcher = CachingAccountFetcher.builder()
+                .fetcher(id -> {
+                    fetches.incrementAndGet();
+                    return null;
+                })
+                .build();
+
+        fetcher.fetchAccount("42");
+        fetcher.fetchAccount("42");
+        Assertions.assertEquals(2, fetches.get());
+        Assertions.assertEquals(0, fetcher.size());
+    }
+
+    @Test
+    public void testBounded() {
+        final CachingAccountFetcher fetcher = CachingAccountFetcher.builder()
+                .fetcher(id -> new TokenizeTest.Account(id, 0))
+                .maximumSize(64)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            fetcher.fetchAccount(String.valueOf(i));
+        }
+        Assertions.assertTrue(fetcher.size() <= 64);
+    }
+
+    @Test
+    public void testCoalesces() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1), entered = new CountDownLatch(1), arrived = new CountDownLatch(8);
+        final CachingAccountFetcher fetcher = CachingAccountFetcher.builder()
+                .fetcher(id -> {
+                    fetches.incrementAndGet();
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return account;
+                })
+                .build();
+
+        final Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final Future<?>[] futures = new Future[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> {
+                    callers.add(Thread.currentThread());
+                    arrived.countDown();
+                    return fetcher.fetchAccount("1337");
+                });
+            }
+            Assertions.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(entered.await(5, TimeUnit.SECONDS));
+            // One caller parks in the delegate, the other seven on its in-flight future.
+            awaitParked(callers);
+            release.countDown();
+            for (final Future<?> future : futures) {
+                Assertions.assertSame(account, future.get(5, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, fetches.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitParked(final Set<Thread> threads) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "callers never parked");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testAsyncSharesInFlight() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CompletableFuture<IAccount> pending = new CompletableFuture<>();
+        final CachingAsyncAccountFetcher fetcher = CachingAsyncAccountFetcher.builder()
+                .fetcher(id -> {
+                    fetches.incrementAndGet();
+                    return pending;
+                })
+                .build();
+
+        final CompletionStage<IAccount> first = fetcher.fetchAccount("1337");
+        final CompletionStage<IAccount> second = fetcher.fetchAccount("1337");
+        second.toCompletableFuture().cancel(false);
+        pending.complete(account);
+
+        Assertions.assertSame(account, first.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertSame(account, fetcher.fetchAccount("1337").toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, fetches.get());
+    }
+}
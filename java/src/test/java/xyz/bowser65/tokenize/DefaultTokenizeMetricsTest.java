@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class DefaultTokenizeMetricsTest {
+    @Test
+    public void testValidation() throws Exception {
+        final DefaultTokenizeMetrics metrics = new DefaultTokenizeMetrics();
+        final Tokenize tokenize = Tokenize.builder().secret(TokenizeTest.SECRET).metrics(metrics).build();
+        final TokenizeTest.Account account = new TokenizeTest.Account("1337", 0);
+        final TokenizeTest.Account revoked = new TokenizeTest.Account("42", Long.MAX_VALUE);
+        final String token = tokenize.generateToken(account).toString();
+        final String revokedToken = tokenize.generateToken(revoked).toString();
+
+        Assertions.assertNotNull(tokenize.validateToken(token, TokenizeTest.fetcher(account)));
+        Assertions.assertNull(tokenize.validateToken(token, TokenizeTest.fetcher()));
+        Assertions.assertNull(tokenize.validateToken(revokedToken, TokenizeTest.fetcher(revoked)));
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token + "A", TokenizeTest.fetcher(account)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("nope", TokenizeTest.fetcher(account)));
+        Assertions.assertNotNull(tokenize.validateToken(token, (AsyncAccountFetcher) id -> CompletableFuture.completedFuture(account))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS));
+        tokenize.validateTokens(Arrays.asList(token, "nope"), TokenizeTest.fetcher(account));
+
+        final DefaultTokenizeMetrics.Snapshot snapshot = metrics.snapshot();
+        Assertions.assertEquals(3, snapshot.getOutcome(ValidationResult.Status.VALID));
+        Assertions.assertEquals(1, snapshot.getOutcome(ValidationResult.Status.UNKNOWN_ACCOUNT));
+        Assertions.assertEquals(1, snapshot.getOutcome(ValidationResult.Status.REVOKED));
+        Assertions.assertEquals(1, snapshot.getOutcome(ValidationResult.Status.BAD_SIGNATURE));
+        Assertions.assertEquals(2, snapshot.getOutcome(ValidationResult.Status.MALFORMED));
+        // Batches don't report per token durations
+        Assertions.assertEquals(6, snapshot.getValidationTime().getCount());
+        Assertions.assertEquals(6, snapshot.getSignatureTime().getCount());
+        Assertions.assertEquals(5, snapshot.getFetchTime().getCount());
+        Assertions.assertTrue(snapshot.getSignatureTime().getPercentileNanos(0.5) > 0);
+
+        metrics.reset();
+        Assertions.assertEquals(0, metrics.snapshot().getValidationTime().getCount());
+    }
+
+    @Test
+    public void testHistogram() {
+        final DefaultTokenizeMetrics metrics = new DefaultTokenizeMetrics();
+        for (int i = 0; i < 99; i++) {
+            metrics.onFetch(1_000);
+        }
+        metrics.onFetch(1_000_000);
+        final DefaultTokenizeMetrics.Histogram histogram = metrics.snapshot().getFetchTime();
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(1_099_000, histogram.getTotalNanos());
+        Assertions.assertEquals(1023, histogram.getPercentileNanos(0.5));
+        Assertions.assertEquals(1023, histogram.getPercentileNanos(0.99));
+        Assertions.assertEquals((1 << 20) - 1, histogram.getPercentileNanos(1));
+    }
+
+    @Test
+    public void testOtp() {
+        final DefaultTokenizeMetrics metrics = new DefaultTokenizeMetrics();
+        OTPUtils.setMetrics(metrics);
+        try {
+            final OtpVerifier verifier = OtpVerifier.of("IJZHE7RAJVSW65ZB", OtpReplayCache.builder().build());
+            Assertions.assertTrue(verifier.validateHotp("297693", 1));
+            Assertions.assertFalse(verifier.validateHotp("297693", 1));
+            Assertions.assertFalse(OTPUtils.validateTotp("000000", "IJZHE7RAJVSW65ZB"));
+        } finally {
+            OTPUtils.setMetrics(null);
+        }
+        Assertions.assertEquals(1, metrics.snapshot().getOtpValid());
+        Assertions.assertEquals(2, metrics.snapshot().getOtpInvalid());
+        Assertions.assertEquals(3, metrics.snapshot().getOtpTime().getCount());
+    }
+}
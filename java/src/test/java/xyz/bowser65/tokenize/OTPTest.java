@@ -32,15 +32,17 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class OTPTest {
     @BeforeEach
     public void purgeUsedTokens() throws NoSuchFieldException, IllegalAccessException {
         final Field field = OTPUtils.class.getDeclaredField("lastUsedCodes");
         field.setAccessible(true);
-        // noinspection unchecked
-        ((Map<String, String>) field.get(null)).clear();
+        ((OtpReplayCache) field.get(null)).clear();
     }
 
     @Test
@@ -57,4 +59,93 @@ public class OTPTest {
         Assertions.assertTrue(OTPUtils.validateHotp(code, key, 1));
         Assertions.assertFalse(OTPUtils.validateHotp(code, key, 1));
     }
+
+    @Test
+    public void testReplayCache() {
+        final OtpReplayCache cache = OtpReplayCache.builder().maximumSize(16).build();
+        final long expiresAt = System.currentTimeMillis() + 60_000;
+        Assertions.assertTrue(cache.markUsed("secret", 2, expiresAt));
+        Assertions.assertFalse(cache.markUsed("secret", 2, expiresAt));
+        Assertions.assertFalse(cache.markUsed("secret", 1, expiresAt));
+        Assertions.assertTrue(cache.markUsed("secret", 3, expiresAt));
+
+        // Expired entries don't block anything
+        Assertions.assertTrue(cache.markUsed("expired", 1, System.currentTimeMillis() - 1));
+        Assertions.assertTrue(cache.markUsed("expired", 1, expiresAt));
+
+        // HOTP counters stay used until a higher one replaces them
+        Assertions.assertTrue(cache.markUsed("hotp", 5));
+        Assertions.assertFalse(cache.markUsed("hotp", 5));
+        Assertions.assertFalse(cache.markUsed("hotp", 4, expiresAt));
+        Assertions.assertTrue(cache.markUsed("hotp", 6));
+
+        for (int i = 0; i < 1000; i++) {
+            cache.markUsed("secret" + i, 1, expiresAt);
+        }
+        Assertions.assertTrue(cache.size() <= 16);
+    }
+
+    @Test
+    public void testStaticVerifierReuse() {
+        final String secret = "IJZHE7RAJVSW65ZB";
+        Assertions.assertSame(OTPUtils.verifier(secret), OTPUtils.verifier(secret));
+        Assertions.assertNotSame(OTPUtils.verifier(secret), OTPUtils.verifier("JBSWY3DPEHPK3PXP"));
+    }
+
+    @Test
+    public void testVerifier() {
+        final OtpVerifier verifier = OtpVerifier.of("IJZHE7RAJVSW65ZB", OtpReplayCache.builder().build());
+        Assertions.assertEquals(297693, verifier.computeCode(1));
+        Assertions.assertEquals(OtpVerifier.computeCode("IJZHE7RAJVSW65ZB", 42), verifier.computeCode(42));
+        Assertions.assertFalse(verifier.validateHotp("000000", 1));
+        Assertions.assertTrue(verifier.validateHotp("297693", 1));
+        Assertions.assertFalse(verifier.validateHotp("297693", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> verifier.validateHotp("29769a", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> verifier.validateHotp("2976930", 1));
+    }
+
+    @Test
+    public void testWindow() {
+        final OtpVerifier verifier = OtpVerifier.of("IJZHE7RAJVSW65ZB", OtpReplayCache.builder().build());
+        final String code = String.valueOf(verifier.computeCode(1));
+        Assertions.assertEquals(-1, verifier.validateHotp(code, 0, 0));
+        Assertions.assertEquals(1, verifier.validateHotp(code, 0, 500));
+        Assertions.assertEquals(-1, verifier.validateHotp(code, 0, 500));
+
+        final long step = System.currentTimeMillis() / OTPUtils.TOTP_STEP;
+        final String skewed = String.format("%06d", verifier.computeCode(step - 2));
+        Assertions.assertEquals(-1, verifier.validateTotp(skewed, 1));
+        final long matched = verifier.validateTotp(skewed, 3);
+        // The step may have just ticked over
+        Assertions.assertTrue(matched == step - 2 || matched == -1 && System.currentTimeMillis() / OTPUtils.TOTP_STEP != step);
+        Assertions.assertEquals(-1, verifier.validateTotp(skewed, 3));
+    }
+
+    @Test
+    public void testProvisioning() {
+        final OtpProvisioner provisioner = OtpProvisioner.builder().issuer("ACME Co").secretLength(20).build();
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("user" + i);
+        }
+        final List<OTPKey> keys = provisioner.generate(names);
+        final Set<String> secrets = new HashSet<>();
+        for (final OTPKey key : keys) {
+            Assertions.assertEquals(32, key.getKey().length());
+            Assertions.assertEquals(20, Base32.decode(key.getKey()).length);
+            secrets.add(key.getKey());
+        }
+        Assertions.assertEquals(1000, secrets.size());
+        Assertions.assertEquals("user999", keys.get(999).getName());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OtpProvisioner.builder().secretLength(8).build());
+    }
+
+    @Test
+    public void testGoogleURI() {
+        final OTPKey key = OtpProvisioner.builder().issuer("ACME Co").build().generate("alice smith@exämple.com");
+        Assertions.assertEquals("otpauth://totp/alice%20smith%40ex%C3%A4mple.com?secret=" + key.getKey() + "&issuer=ACME%20Co", key.getGoogleURI());
+        final OTPKey hotp = OTPKey.builder().name("\ud83d\ude00").hotp(true).build();
+        Assertions.assertEquals(16, hotp.getKey().length());
+        Assertions.assertEquals("otpauth://hotp/%F0%9F%98%80?secret=" + hotp.getKey(), hotp.getGoogleURI());
+    }
 }
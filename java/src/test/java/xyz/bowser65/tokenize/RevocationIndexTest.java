@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SignatureException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RevocationIndexTest {
+    @Test
+    public void testPutGet() {
+        final RevocationIndex index = RevocationIndex.allocate(1000);
+        Assertions.assertEquals(-1, index.get("1337"));
+        index.put("1337", 0);
+        index.put("42", 100);
+        Assertions.assertEquals(0, index.get("1337"));
+        Assertions.assertEquals(100, index.get("42"));
+
+        index.put("42", 200);
+        Assertions.assertEquals(200, index.get("42"));
+        // Timestamps never go back
+        index.put("42", 150);
+        Assertions.assertEquals(200, index.get("42"));
+        Assertions.assertEquals(2, index.size());
+
+        for (int i = 0; i < index.maxSize() - 2; i++) {
+            index.put("account" + i, i);
+        }
+        Assertions.assertEquals(999, index.get("account999"));
+        Assertions.assertThrows(IllegalStateException.class, () -> index.put("one too many", 0));
+        index.clear();
+        Assertions.assertEquals(-1, index.get("1337"));
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        final Path file = Files.createTempFile("tokenize", ".index");
+        try {
+            Files.delete(file);
+            final RevocationIndex index = RevocationIndex.open(file, 100);
+            index.put("1337", 42);
+            index.force();
+
+            final RevocationIndex reopened = RevocationIndex.open(file, 1);
+            Assertions.assertEquals(42, reopened.get("1337"));
+            Assertions.assertEquals(index.maxSize(), reopened.maxSize());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testValidate() throws SignatureException {
+        final RevocationIndex index = RevocationIndex.allocate(16);
+        final Tokenize tokenize = Tokenize.builder().secret(TokenizeTest.SECRET).revocationIndex(index).build();
+        final TokenizeTest.Account account = new TokenizeTest.Account("1337", 0);
+        final String token = new Token(tokenize, account, 42).toString();
+        final AccountFetcher failing = id -> {
+            throw new AssertionError("Indexed accounts must not be fetched");
+        };
+        final AtomicInteger fetches = new AtomicInteger();
+        final AccountFetcher counting = id -> {
+            fetches.incrementAndGet();
+            return account;
+        };
+
+        // Indexed accounts are only fetched once the token is asked for its account
+        index.put(account);
+        final Token validated = tokenize.validateToken(token, counting);
+        Assertions.assertNotNull(validated);
+        Assertions.assertEquals("1337", validated.getAccountId());
+        Assertions.assertEquals(token, validated.toString());
+        Assertions.assertEquals(0, fetches.get());
+        Assertions.assertSame(account, validated.getAccount());
+        Assertions.assertSame(account, validated.getAccount());
+        Assertions.assertEquals(1, fetches.get());
+        Assertions.assertEquals(ValidationResult.Status.VALID, tokenize.validateTokens(Collections.singletonList(token), failing).get(0).getStatus());
+        Assertions.assertNotNull(tokenize.validateToken(token, failing));
+
+        index.put("1337", 42);
+        Assertions.assertNull(tokenize.validateToken(token, failing));
+        Assertions.assertEquals(ValidationResult.Status.REVOKED, tokenize.validateTokens(Collections.singletonList(token), failing).get(0).getStatus());
+
+        // Misses fall back to the fetcher
+        final String other = new Token(tokenize, new TokenizeTest.Account("7", 0), 42).toString();
+        Assertions.assertNotNull(tokenize.validateToken(other, TokenizeTest.fetcher(new TokenizeTest.Account("7", 0))));
+    }
+
+    @Test
+    public void testConcurrentReads() throws InterruptedException {
+        final RevocationIndex index = RevocationIndex.allocate(10_000);
+        final AtomicBoolean mixed = new AtomicBoolean();
+        final Thread reader = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 5000; i++) {
+                    final long value = index.get("account" + i);
+                    // A value is only ever seen along with the hash of its own id
+                    if (value != -1 && value != i) mixed.set(true);
+                }
+            }
+        });
+        reader.start();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5000; i++) {
+                index.put("account" + i, i);
+            }
+            index.clear();
+        }
+        reader.join();
+        Assertions.assertFalse(mixed.get());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TokenWriterTest {
+    @Test
+    public void testWrite() throws Exception {
+        final Tokenize tokenize = Tokenize.builder().secret(TokenizeTest.SECRET).version(Tokenize.VERSION_2).build();
+        final List<IAccount> accounts = new ArrayList<>();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            final IAccount account = i % 2 == 0 ? new TokenizeTest.LongAccount(i % 4 == 0 ? i : -i, 0) : new TokenizeTest.Account("account " + i, 0);
+            accounts.add(account);
+            expected.append(new Token(tokenize, account, "pré", 42).toString()).append('\n');
+        }
+
+        final TokenWriter writer = TokenWriter.builder().tokenize(tokenize).prefix("pré").genTime(42).parallelism(4).chunkSize(700).build();
+        final StringBuilder out = new StringBuilder();
+        Assertions.assertEquals(2000, writer.write(accounts.iterator(), out));
+        Assertions.assertEquals(expected.toString(), out.toString());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Assertions.assertEquals(2000, writer.write(accounts.iterator(), Channels.newChannel(bytes)));
+        Assertions.assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+
+        final ByteBuffer buffer = ByteBuffer.allocate(bytes.size());
+        Assertions.assertEquals(2000, writer.write(accounts.iterator(), buffer));
+        Assertions.assertFalse(buffer.hasRemaining());
+        Assertions.assertThrows(BufferOverflowException.class, () -> writer.write(accounts.iterator(), ByteBuffer.allocate(100)));
+    }
+
+    @Test
+    public void testValidates() throws Exception {
+        final Tokenize tokenize = new Tokenize(TokenizeTest.SECRET);
+        final TokenizeTest.Account account = new TokenizeTest.Account("1337", 0);
+        final StringBuilder out = new StringBuilder();
+        TokenWriter.builder().tokenize(tokenize).separator(",").build().write(Collections.singletonList(account).iterator(), out);
+        Assertions.assertEquals(',', out.charAt(out.length() - 1));
+        Assertions.assertNotNull(tokenize.validateToken(out.substring(0, out.length() - 1), TokenizeTest.fetcher(account)));
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2020 Bowser65, All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ *    may be used to endorse or promote products derived from this software without
+ *    specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package xyz.bowser65.tokenize;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SignatureException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TokenizeTest {
+    static final byte[] SECRET = "very secure private key".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testSignature() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final String token = new Token(tokenize, new Account("1337", 0), "pr\u00e9\ud83d\ude00", 42).toString();
+        final String signed = token.substring(0, token.lastIndexOf('.'));
+
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        final byte[] expected = mac.doFinal(("TTF.1." + signed).getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(Base64.getEncoder().withoutPadding().encodeToString(expected), token.substring(signed.length() + 1));
+    }
+
+    @Test
+    public void testValidate() throws SignatureException {
+        final Account account = new Account("1337", 0);
+        for (final Tokenize tokenize : new Tokenize[]{
+                new Tokenize(SECRET),
+                new Tokenize(HmacEngine.pooled(Tokenize.ALGORITHM, SECRET, 4))
+        }) {
+            final String token = tokenize.generateToken(account, "prefix").toString();
+            final Token validated = tokenize.validateToken(token, fetcher(account));
+            Assertions.assertNotNull(validated);
+            Assertions.assertEquals("prefix", validated.getPrefix());
+            Assertions.assertEquals(token, validated.toString());
+        }
+    }
+
+    @Test
+    public void testBadSignature() {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0);
+        final String token = new Tokenize("another key".getBytes(StandardCharsets.UTF_8)).generateToken(account).toString();
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token, fetcher(account)));
+    }
+
+    @Test
+    public void testMemoised() throws SignatureException {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0);
+        final Token token = new Token(tokenize, account, 42);
+        final String signed = token.toString();
+        Assertions.assertSame(signed, token.toString());
+
+        token.setPrefix("prefix");
+        Assertions.assertNotEquals(signed, token.toString());
+        Assertions.assertEquals("prefix", tokenize.validateToken(token.toString(), fetcher(account)).getPrefix());
+
+        final Token validated = tokenize.validateToken(signed, fetcher(account));
+        Assertions.assertNotNull(validated);
+        Assertions.assertSame(signed, validated.toString());
+    }
+
+    @Test
+    public void testVersion2() throws SignatureException {
+        final Tokenize v1 = new Tokenize(SECRET);
+        final Tokenize v2 = Tokenize.builder().secret(SECRET).version(Tokenize.VERSION_2).build();
+        final Tokenize truncated = Tokenize.builder().secret(SECRET).version(Tokenize.VERSION_2).macLength(16).build();
+        final Tokenize migrating = Tokenize.builder().secret(SECRET).version(Tokenize.VERSION_2).minMacLength(16).build();
+        final Account account = new Account("\u00e9l\u00e9phant", 0);
+
+        for (final String prefix : new String[]{null, "prefix"}) {
+            final String token = v2.generateToken(account, prefix).toString();
+            Assertions.assertEquals(prefix == null ? 1 : 2, token.chars().filter(c -> c == '.').count());
+            Assertions.assertTrue(token.length() < v1.generateToken(account, prefix).toString().length());
+
+            final Token validated = v2.validateToken(token, fetcher(account));
+            Assertions.assertNotNull(validated);
+            Assertions.assertEquals(prefix, validated.getPrefix());
+            Assertions.assertSame(account, validated.getAccount());
+            // Longer signatures than a node's own are always accepted
+            Assertions.assertNotNull(truncated.validateToken(token, fetcher(account)));
+
+            // Both versions are accepted, so live traffic can migrate
+            Assertions.assertNotNull(v2.validateToken(v1.generateToken(account, prefix).toString(), fetcher(account)));
+            Assertions.assertNotNull(v1.validateToken(token, fetcher(account)));
+
+            final String shorter = truncated.generateToken(account, prefix).toString();
+            Assertions.assertEquals(token.length() - 21, shorter.length());
+            Assertions.assertNotNull(truncated.validateToken(shorter, fetcher(account)));
+            // Shorter ones only once the node is told to accept them
+            Assertions.assertThrows(SignatureException.class, () -> v2.validateToken(shorter, fetcher(account)));
+            Assertions.assertNotNull(migrating.validateToken(shorter, fetcher(account)));
+            Assertions.assertNotNull(migrating.validateToken(token, fetcher(account)));
+
+            // Tokens carry their MAC length, so truncating a signature doesn't give another valid token
+            final String cut = token.substring(0, token.length() - 21);
+            Assertions.assertThrows(SignatureException.class, () -> migrating.validateToken(cut, fetcher(account)));
+            Assertions.assertThrows(SignatureException.class, () -> truncated.validateToken(cut, fetcher(account)));
+            final String tooShort = shorter.substring(0, shorter.length() - 11);
+            Assertions.assertThrows(SignatureException.class, () -> migrating.validateToken(tooShort, fetcher(account)));
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> v2.validateToken("AgA.AAAA", fetcher(account)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(SECRET).macLength(16).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(SECRET).version(2).macLength(8).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().version(2).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(SECRET).version(2).minMacLength(8).build());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Tokenize.builder().secret(SECRET).version(2).macLength(16).minMacLength(20).build());
+    }
+
+    @Test
+    public void testKeyring() throws SignatureException {
+        final Keyring keyring = Keyring.of(SECRET);
+        final Tokenize tokenize = Tokenize.builder().keyring(keyring).version(Tokenize.VERSION_2).build();
+        final Account account = new Account("1337", 0);
+
+        final String old = tokenize.generateToken(account).toString();
+        keyring.add(7, "another secret".getBytes(StandardCharsets.UTF_8)).setPrimary(7);
+        final String rotated = tokenize.generateToken(account).toString();
+        Assertions.assertNotNull(tokenize.validateToken(old, fetcher(account)));
+        Assertions.assertNotNull(tokenize.validateToken(rotated, fetcher(account)));
+        Assertions.assertNull(new Tokenize(SECRET).validateTokens(Collections.singletonList(rotated), fetcher(account)).get(0).getToken());
+
+        keyring.retire(0);
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(old, fetcher(account)));
+        Assertions.assertNotNull(tokenize.validateToken(rotated, fetcher(account)));
+        Assertions.assertThrows(IllegalStateException.class, () -> keyring.retire(7));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> keyring.add(7, SECRET));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> keyring.add(256, SECRET));
+    }
+
+    @Test
+    public void testVerifiedCache() throws SignatureException {
+        final Keyring keyring = Keyring.of(SECRET);
+        final DefaultTokenizeMetrics metrics = new DefaultTokenizeMetrics();
+        final Tokenize tokenize = Tokenize.builder().keyring(keyring).version(Tokenize.VERSION_2)
+                .metrics(metrics).verifiedCacheSize(100).build();
+        final Account account = new Account("1337", 0);
+        final String token = tokenize.generateToken(account).toString();
+        final long signatures = metrics.snapshot().getSignatureTime().getCount();
+
+        Assertions.assertNotNull(tokenize.validateToken(token, fetcher(account)));
+        Assertions.assertNotNull(tokenize.validateToken(new String(token.toCharArray()), fetcher(account)));
+        Assertions.assertEquals(signatures + 1, metrics.snapshot().getSignatureTime().getCount());
+        Assertions.assertNull(tokenize.validateToken(token, fetcher(new Account("1337", Tokenize.currentTokenTime() + 10))));
+        Assertions.assertNotNull(tokenize.validateToken(new StringBuilder(token), fetcher(account)));
+        Assertions.assertEquals(signatures + 2, metrics.snapshot().getSignatureTime().getCount());
+
+        keyring.add(1, "another secret".getBytes(StandardCharsets.UTF_8)).setPrimary(1);
+        keyring.retire(0);
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token, fetcher(account)));
+    }
+
+    @Test
+    public void testParse() throws SignatureException {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("\u00e9l\u00e9phant", 0);
+        final String token = tokenize.generateToken(account).toString();
+        final Token validated = tokenize.validateToken(new StringBuilder(token), fetcher(account));
+        Assertions.assertNotNull(validated);
+        Assertions.assertNull(validated.getPrefix());
+        Assertions.assertSame(account, validated.getAccount());
+
+        final String forged = token.substring(0, token.lastIndexOf('.')) + ".AAAA";
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(forged, fetcher(account)));
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(token + "A", fetcher(account)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("a", fetcher(account)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tokenize.validateToken("a.b.c.d.e", fetcher(account)));
+    }
+
+    @Test
+    public void testValidateBytes() throws SignatureException {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0);
+        final byte[] token = tokenize.generateToken(account, "pr\u00e9fix").toString().getBytes(StandardCharsets.UTF_8);
+
+        final byte[] framed = new byte[token.length + 8];
+        System.arraycopy(token, 0, framed, 4, token.length);
+        final Token fromArray = tokenize.validateToken(framed, 4, token.length, fetcher(account));
+        Assertions.assertNotNull(fromArray);
+        Assertions.assertEquals("pr\u00e9fix", fromArray.getPrefix());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(token.length + 2);
+        direct.put((byte) ' ').put(token).flip().position(1);
+        Assertions.assertNotNull(tokenize.validateToken(direct, fetcher(account)));
+        Assertions.assertEquals(1, direct.position());
+
+        token[token.length - 1] ^= 1;
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.validateToken(ByteBuffer.wrap(token), fetcher(account)));
+    }
+
+    @Test
+    public void testValidateTokens() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0), revoked = new Account("42", Tokenize.currentTokenTime() + 10);
+        final String valid = tokenize.generateToken(account).toString();
+        final List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tokens.add(valid);
+        }
+        tokens.add(valid.substring(0, valid.length() - 2));
+        tokens.add("not a token");
+        tokens.add(tokenize.generateToken(revoked).toString());
+        tokens.add(tokenize.generateToken(new Account("unknown", 0)).toString());
+
+        final AtomicInteger fetches = new AtomicInteger();
+        final List<ValidationResult> results = tokenize.validateTokens(tokens, (AccountFetcher) id -> {
+            fetches.incrementAndGet();
+            return fetcher(account, revoked).fetchAccount(id);
+        });
+        Assertions.assertEquals(tokens.size(), results.size());
+        Assertions.assertEquals(3, fetches.get());
+        Assertions.assertTrue(results.get(999).isValid());
+        Assertions.assertEquals(valid, results.get(999).getToken().toString());
+        Assertions.assertEquals(ValidationResult.Status.BAD_SIGNATURE, results.get(1000).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.MALFORMED, results.get(1001).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.REVOKED, results.get(1002).getStatus());
+        Assertions.assertEquals(ValidationResult.Status.UNKNOWN_ACCOUNT, results.get(1003).getStatus());
+
+        final List<ValidationResult> bulk = tokenize.validateTokens(tokens, (BulkAccountFetcher) ids -> {
+            Assertions.assertEquals(3, ids.size());
+            final Map<String, IAccount> accounts = new HashMap<>();
+            accounts.put(account.getTokenId(), account);
+            return CompletableFuture.completedFuture(accounts);
+        }).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(bulk.get(0).isValid());
+        Assertions.assertEquals(ValidationResult.Status.UNKNOWN_ACCOUNT, bulk.get(1002).getStatus());
+    }
+
+    @Test
+    public void testRevoked() throws SignatureException {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", Tokenize.currentTokenTime() + 10);
+        final String token = tokenize.generateToken(account).toString();
+        Assertions.assertNull(tokenize.validateToken(token, fetcher(account)));
+    }
+
+    @Test
+    public void testValidateAsync() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0);
+        final String token = tokenize.generateToken(account).toString();
+
+        final AtomicInteger executed = new AtomicInteger();
+        final Token validated = tokenize.validateTokenAsync(token, id -> CompletableFuture.completedFuture(account), task -> {
+            executed.incrementAndGet();
+            task.run();
+        }, null).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(token, validated.toString());
+        Assertions.assertEquals(1, executed.get());
+
+        final ExecutionException forged = Assertions.assertThrows(ExecutionException.class, () -> tokenize
+                .validateTokenAsync(token + "A", id -> CompletableFuture.completedFuture(account)).toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(forged.getCause() instanceof SignatureException);
+
+        final CompletableFuture<IAccount> failing = new CompletableFuture<>();
+        failing.completeExceptionally(new IllegalStateException("store down"));
+        final ExecutionException failed = Assertions.assertThrows(ExecutionException.class, () -> tokenize
+                .validateTokenAsync(token, id -> failing).toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(failed.getCause() instanceof IllegalStateException);
+        Assertions.assertThrows(ExecutionException.class, () -> tokenize.validateToken(token, (AsyncAccountFetcher) id -> failing)
+                .toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testValidateAsyncCancellation() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final String token = tokenize.generateToken(new Account("1337", 0)).toString();
+
+        final CompletableFuture<IAccount> slow = new CompletableFuture<>();
+        final ExecutionException timedOut = Assertions.assertThrows(ExecutionException.class, () -> tokenize
+                .validateTokenAsync(token, id -> slow, null, Duration.ofMillis(10)).toCompletableFuture().get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+        Assertions.assertTrue(slow.isCancelled());
+
+        final CompletableFuture<IAccount> pending = new CompletableFuture<>();
+        tokenize.validateTokenAsync(token, id -> pending).toCompletableFuture().cancel(false);
+        Assertions.assertTrue(pending.isCancelled());
+    }
+
+    @Test
+    public void testTimeoutDependentsOffScheduler() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final String token = tokenize.generateToken(new Account("1337", 0)).toString();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+        try {
+            // A dependent stage blocking must not hold the scheduler other timeouts fire on.
+            tokenize.validateTokenAsync(token, id -> new CompletableFuture<>(), executor, Duration.ofMillis(10)).whenComplete((t, e) -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Assertions.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            final ExecutionException timedOut = Assertions.assertThrows(ExecutionException.class, () -> tokenize
+                    .validateTokenAsync(token, id -> new CompletableFuture<>(), executor, Duration.ofMillis(10))
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(timedOut.getCause() instanceof TimeoutException);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVerifyToken() throws Exception {
+        final Tokenize tokenize = new Tokenize(SECRET);
+        final Account account = new Account("1337", 0);
+        final String token = tokenize.generateToken(account, "prefix").toString();
+
+        final VerifiedToken verified = tokenize.verifyToken(token);
+        Assertions.assertEquals("1337", verified.getAccountId());
+        Assertions.assertEquals("prefix", verified.getPrefix());
+        Assertions.assertTrue(verified.getAge() >= 0);
+        Assertions.assertFalse(verified.isRevoked(0));
+        Assertions.assertTrue(verified.isRevoked(verified.getGenTime()));
+        Assertions.assertFalse(verified.isKnownRevoked());
+        Assertions.assertThrows(SignatureException.class, () -> tokenize.verifyToken(token + "A"));
+
+        Assertions.assertEquals(token, verified.resolve(fetcher(account)).toString());
+        Assertions.assertNull(verified.resolve(fetcher(new Account("1337", Tokenize.currentTokenTime() + 10))));
+        Assertions.assertEquals(token, verified.resolve((AsyncAccountFetcher) id -> CompletableFuture.completedFuture(account))
+                .toCompletableFuture().get(5, TimeUnit.SECONDS).toString());
+    }
+
+    @Test
+    public void testLongIds() throws Exception {
+        final LongAccount account = new LongAccount(1234567890123L, 0);
+        for (final Tokenize tokenize : new Tokenize[]{new Tokenize(SECRET), Tokenize.builder().secret(SECRET).version(Tokenize.VERSION_2).build()}) {
+            final String token = new Token(tokenize, account, "prefix", 42).toString();
+            Assertions.assertEquals(new Token(tokenize, new Account("1234567890123", 0), "prefix", 42).toString(), token);
+            Assertions.assertEquals(new Token(tokenize, new Account("0", 0), 42).toString(), new Token(tokenize, new LongAccount(0, 0), 42).toString());
+
+            final LongAccountFetcher fetcher = id -> id == account.getLongTokenId() ? account : null;
+            final Token validated = tokenize.validateToken(token, fetcher);
+            Assertions.assertSame(account, validated.getAccount());
+            Assertions.assertEquals("prefix", validated.getPrefix());
+            Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(new Account("x1234567890123", 0)).toString(), fetcher));
+            Assertions.assertNull(tokenize.validateToken(tokenize.generateToken(new Account("01234567890123", 0)).toString(), fetcher));
+
+            final Token async = tokenize.validateToken(token, (AsyncLongAccountFetcher) id -> CompletableFuture.completedFuture(fetcher.fetchAccount(id)))
+                    .toCompletableFuture().get(5, TimeUnit.SECONDS);
+            Assertions.assertEquals(token, async.toString());
+
+            // Negative ids are written like their String form, and validate against a String fetcher
+            final LongAccount negative = new LongAccount(-42, 0);
+            final String negativeToken = tokenize.generateToken(negative).toString();
+            Assertions.assertEquals(new Token(tokenize, new Account("-42", 0), 42).toString(), new Token(tokenize, negative, 42).toString());
+            final Token negativeValidated = tokenize.validateToken(negativeToken, fetcher(negative));
+            Assertions.assertNotNull(negativeValidated);
+            Assertions.assertSame(negative, negativeValidated.getAccount());
+        }
+    }
+
+    @Test
+    public void testStringSignatures() throws NoSuchMethodException {
+        // Callers compiled against the original String signatures must keep linking.
+        Assertions.assertEquals(Token.class, Tokenize.class.getMethod("validateToken", String.class, AccountFetcher.class).getReturnType());
+        Assertions.assertEquals(CompletionStage.class, Tokenize.class.getMethod("validateToken", String.class, AsyncAccountFetcher.class).getReturnType());
+    }
+
+    static AccountFetcher fetcher(final IAccount... accounts) {
+        return id -> {
+            for (final IAccount account : accounts) {
+                if (account.getTokenId().equals(id)) return account;
+            }
+            return null;
+        };
+    }
+
+    static class LongAccount implements ILongAccount {
+        private final long id;
+        private final long validSince;
+
+        LongAccount(final long id, final long validSince) {
+            this.id = id;
+            this.validSince = validSince;
+        }
+
+        @Override
+        public long getLongTokenId() {
+            return id;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return validSince;
+        }
+    }
+
+    static class Account implements IAccount {
+        private final String id;
+        private final long validSince;
+
+        Account(final String id, final long validSince) {
+            this.id = id;
+            this.validSince = validSince;
+        }
+
+        @Override
+        public String getTokenId() {
+            return id;
+        }
+
+        @Override
+        public long tokensValidSince() {
+            return validSince;
+        }
+    }
+}